@@ -0,0 +1,285 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Writes automata to DOT, SVG and PNG files without a display, so batch jobs can dump them.
+// Everything is streamed: DOT is written state by state straight from the transition map,
+// SVG element by element from the layout, and PNG is rendered in strips of at most
+// TILE_HEIGHT rows that are compressed into the file as they are finished. Besides the
+// layout, memory stays constant however many states there are.
+public class AutomatonExporter {
+
+    static final int TILE_HEIGHT = 256;
+
+    // Wide pictures get lower strips, so a strip never holds more pixels than this
+    private static final int MAX_STRIP_PIXELS = 1 << 24;
+
+    private static final int IDAT_BYTES = 1 << 16;
+
+    private AutomatonExporter() {
+    }
+
+    // Picks the format by the file extension: .dot or .gv, .svg or .png
+    public static void export(FiniteAutomaton automaton, Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".dot") || name.endsWith(".gv")) {
+            writeDot(automaton, file);
+        } else if (name.endsWith(".svg")) {
+            writeSvg(automaton, file);
+        } else if (name.endsWith(".png")) {
+            writePng(automaton, file, 1);
+        } else {
+            throw new IllegalArgumentException("Unknown export format: " + file.getFileName());
+        }
+    }
+
+    public static void writeDot(FiniteAutomaton automaton, Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeDot(automaton, writer);
+        }
+    }
+
+    public static void writeDot(FiniteAutomaton automaton, Writer writer) throws IOException {
+        writer.write("digraph automaton {\n");
+        writer.write("    rankdir=LR;\n");
+        writer.write("    node [shape=circle];\n");
+        writer.write("    __start [shape=point];\n");
+        writer.write("    __start -> " + dotId(automaton.getStartState()) + ";\n");
+
+        for (String state : automaton.getAcceptStates()) {
+            writer.write("    " + dotId(state) + " [shape=doublecircle];\n");
+        }
+        for (String state : automaton.getStates()) {
+            if (!automaton.getAcceptStates().contains(state)) {
+                writer.write("    " + dotId(state) + ";\n");
+            }
+        }
+
+        // Only the transitions of one state are grouped by target at a time
+        for (Map.Entry<String, Map<String, Set<String>>> entry : automaton.getTransitions().entrySet()) {
+            Map<String, Set<String>> symbolsOfTarget = new TreeMap<>();
+            entry.getValue().forEach((symbol, targets) -> {
+                for (String target : targets) {
+                    symbolsOfTarget.computeIfAbsent(target, key -> new TreeSet<>()).add(symbol);
+                }
+            });
+
+            for (Map.Entry<String, Set<String>> edge : symbolsOfTarget.entrySet()) {
+                writer.write("    " + dotId(entry.getKey()) + " -> " + dotId(edge.getKey())
+                        + " [label=" + dotId(AutomatonLayout.label(edge.getValue())) + "];\n");
+            }
+        }
+
+        writer.write("}\n");
+        writer.flush();
+    }
+
+    public static void writeSvg(FiniteAutomaton automaton, Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeSvg(AutomatonLayout.of(automaton), writer);
+        }
+    }
+
+    public static void writeSvg(AutomatonLayout layout, Writer writer) throws IOException {
+        int radius = LayoutPainter.STATE_RADIUS;
+        writer.write(String.format(Locale.ROOT, "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" font-family=\"sans-serif\" font-size=\"12\">%n",
+                (int) Math.ceil(layout.width), (int) Math.ceil(layout.height)));
+        writer.write("<defs><marker id=\"arrow\" viewBox=\"0 0 10 10\" refX=\"10\" refY=\"5\" markerWidth=\"10\" markerHeight=\"10\" orient=\"auto\">"
+                + "<path d=\"M0,0 L10,5 L0,10 z\"/></marker></defs>\n");
+        writer.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+        for (int edge = 0; edge < layout.getEdgeCount(); edge++) {
+            int from = layout.edgeFrom[edge];
+            int to = layout.edgeTo[edge];
+            double fromX = layout.x[from];
+            double fromY = layout.y[from];
+            String label = xml(layout.edgeLabels[edge]);
+
+            if (from == to) {
+                writer.write(String.format(Locale.ROOT, "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"%d\" fill=\"none\" stroke=\"black\"/>%n", fromX, fromY - radius, radius));
+                writer.write(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%.1f\" text-anchor=\"middle\">%s</text>%n", fromX, fromY - 2 * radius - 6, label));
+                continue;
+            }
+
+            double dx = layout.x[to] - fromX;
+            double dy = layout.y[to] - fromY;
+            double distance = Math.max(1, Math.sqrt(dx * dx + dy * dy));
+            double unitX = dx / distance;
+            double unitY = dy / distance;
+            writer.write(String.format(Locale.ROOT, "<line x1=\"%.1f\" y1=\"%.1f\" x2=\"%.1f\" y2=\"%.1f\" stroke=\"black\" marker-end=\"url(#arrow)\"/>%n",
+                    fromX + unitX * radius, fromY + unitY * radius, layout.x[to] - unitX * radius, layout.y[to] - unitY * radius));
+            writer.write(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%.1f\">%s</text>%n", fromX + dx * 0.4 - unitY * 8, fromY + dy * 0.4 + unitX * 8, label));
+        }
+
+        double startX = layout.x[layout.startState];
+        double startY = layout.y[layout.startState];
+        writer.write(String.format(Locale.ROOT, "<line x1=\"%.1f\" y1=\"%.1f\" x2=\"%.1f\" y2=\"%.1f\" stroke=\"black\" marker-end=\"url(#arrow)\"/>%n",
+                startX + 80, startY, startX + radius, startY));
+
+        String fill = String.format(Locale.ROOT, "#%06X", LayoutPainter.STATE_COLOR.getRGB() & 0xFFFFFF);
+        for (int state = 0; state < layout.getStateCount(); state++) {
+            double x = layout.x[state];
+            double y = layout.y[state];
+            writer.write(String.format(Locale.ROOT, "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"%d\" fill=\"%s\" stroke=\"black\"/>%n", x, y, radius, fill));
+            if (layout.accepting[state]) {
+                writer.write(String.format(Locale.ROOT, "<circle cx=\"%.1f\" cy=\"%.1f\" r=\"%d\" fill=\"none\" stroke=\"black\"/>%n", x, y, radius * 3 / 4));
+            }
+            writer.write(String.format(Locale.ROOT, "<text x=\"%.1f\" y=\"%.1f\" text-anchor=\"middle\" dominant-baseline=\"central\">%s</text>%n",
+                    x, y, xml(layout.stateNames[state])));
+        }
+
+        writer.write("</svg>\n");
+        writer.flush();
+    }
+
+    public static void writePng(FiniteAutomaton automaton, Path file, double scale) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file))) {
+            writePng(AutomatonLayout.of(automaton), output, scale);
+        }
+    }
+
+    // A PNG encoder of its own, because ImageIO wants the whole image in memory at once: the
+    // picture is painted one strip at a time and every strip's rows go through the deflater
+    // into IDAT chunks before the next strip is painted
+    public static void writePng(AutomatonLayout layout, OutputStream output, double scale) throws IOException {
+        int width = Math.max(1, (int) Math.ceil(layout.width * scale));
+        int height = Math.max(1, (int) Math.ceil(layout.height * scale));
+        DataOutputStream data = new DataOutputStream(output);
+
+        data.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = 2;
+        writeChunk(data, "IHDR", header, header.length);
+
+        LayoutPainter painter = new LayoutPainter(layout);
+        int stripHeight = Math.max(1, Math.min(Math.min(TILE_HEIGHT, height), MAX_STRIP_PIXELS / width));
+        BufferedImage strip = new BufferedImage(width, stripHeight, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = new int[width];
+        byte[] row = new byte[1 + 3 * width];
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try (DeflaterOutputStream compressed = new DeflaterOutputStream(new IdatOutputStream(data), deflater, IDAT_BYTES)) {
+            for (int top = 0; top < height; top += strip.getHeight()) {
+                int rows = Math.min(strip.getHeight(), height - top);
+                Graphics2D g = strip.createGraphics();
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, strip.getHeight());
+                painter.paint(g, 0, top / scale, scale, width, rows);
+                g.dispose();
+
+                for (int y = 0; y < rows; y++) {
+                    strip.getRGB(0, y, width, 1, pixels, 0, width);
+                    for (int x = 0; x < width; x++) {
+                        row[1 + 3 * x] = (byte) (pixels[x] >> 16);
+                        row[2 + 3 * x] = (byte) (pixels[x] >> 8);
+                        row[3 + 3 * x] = (byte) pixels[x];
+                    }
+                    compressed.write(row);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+
+        writeChunk(data, "IEND", new byte[0], 0);
+        data.flush();
+    }
+
+    // Cuts the compressed stream into IDAT chunks, closing it does not close the file
+    private static class IdatOutputStream extends OutputStream {
+        private final DataOutputStream data;
+        private final byte[] buffer = new byte[IDAT_BYTES];
+        private int size;
+
+        IdatOutputStream(DataOutputStream data) {
+            this.data = data;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int count = Math.min(length, buffer.length - size);
+                System.arraycopy(bytes, offset, buffer, size, count);
+                size += count;
+                offset += count;
+                length -= count;
+                if (size == buffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size > 0) {
+                writeChunk(data, "IDAT", buffer, size);
+                size = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static void writeChunk(DataOutputStream data, String type, byte[] bytes, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(bytes, 0, length);
+
+        data.writeInt(length);
+        data.write(typeBytes);
+        data.write(bytes, 0, length);
+        data.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    private static String dotId(String name) {
+        return "\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String xml(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                case '"' -> escaped.append("&quot;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
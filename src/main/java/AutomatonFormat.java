@@ -0,0 +1,294 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Binary file format of a compiled automaton, all numbers little-endian:
+//
+//   header       magic "LFAD", version, flags, state count, class count,
+//                class map length, start state, reserved (eight ints)
+//   class map    one u16 class per char below the map length, later chars are class 0
+//   table        state count * class count ints, -1 for the dead state
+//   accept set   one bit per state, packed into longs
+//   state names  only with FLAG_STATE_NAMES: state count + 1 int offsets into the UTF-8 bytes
+//
+// Every section starts on an 8-byte boundary, so a mapped file can be read in place.
+class AutomatonFormat {
+
+    static final int MAGIC = 0x4441464C;
+    static final int VERSION = 1;
+    static final int FLAG_STATE_NAMES = 1;
+    static final int HEADER_BYTES = 32;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    // Section layout derived from the header
+    static class Header {
+        final int flags;
+        final int stateCount;
+        final int classCount;
+        final int classMapLength;
+        final int startState;
+
+        final long classMapOffset;
+        final long tableOffset;
+        final long acceptOffset;
+        final long namesOffset;
+
+        Header(int flags, int stateCount, int classCount, int classMapLength, int startState) {
+            this.flags = flags;
+            this.stateCount = stateCount;
+            this.classCount = classCount;
+            this.classMapLength = classMapLength;
+            this.startState = startState;
+
+            classMapOffset = HEADER_BYTES;
+            tableOffset = align(classMapOffset + 2L * classMapLength);
+            acceptOffset = align(tableOffset + 4L * stateCount * classCount);
+            namesOffset = acceptOffset + 8L * acceptWords();
+        }
+
+        static Header read(ByteBuffer buffer) throws IOException {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a compiled automaton file");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported compiled automaton version " + buffer.getInt(4));
+            }
+
+            Header header = new Header(buffer.getInt(8), buffer.getInt(12), buffer.getInt(16), buffer.getInt(20), buffer.getInt(24));
+            if (header.stateCount < 1 || header.classCount < 1 || header.classMapLength < 0
+                    || header.classMapLength > Character.MAX_VALUE + 1
+                    || header.startState < 0 || header.startState >= header.stateCount) {
+                throw new IOException("Corrupt compiled automaton header");
+            }
+            return header;
+        }
+
+        int acceptWords() {
+            return (stateCount + 63) >>> 6;
+        }
+
+        boolean hasStateNames() {
+            return (flags & FLAG_STATE_NAMES) != 0;
+        }
+
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+    }
+
+    static void write(CompiledAutomaton automaton, Path file, boolean withStateNames) throws IOException {
+        int stateCount = automaton.getStateCount();
+        int classCount = automaton.getClassCount();
+        int classMapLength = classMapLength(automaton);
+        Header header = new Header(withStateNames ? FLAG_STATE_NAMES : 0, stateCount, classCount, classMapLength, automaton.getStartState());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output output = new Output(channel);
+            output.putInt(MAGIC);
+            output.putInt(VERSION);
+            output.putInt(header.flags);
+            output.putInt(stateCount);
+            output.putInt(classCount);
+            output.putInt(classMapLength);
+            output.putInt(header.startState);
+            output.putInt(0);
+
+            for (int c = 0; c < classMapLength; c++) {
+                output.putChar((char) automaton.classOf((char) c));
+            }
+            output.pad(header.tableOffset);
+
+            for (int state = 0; state < stateCount; state++) {
+                for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                    output.putInt(automaton.target(state, symbolClass));
+                }
+            }
+            output.pad(header.acceptOffset);
+
+            for (int word = 0; word < header.acceptWords(); word++) {
+                long bits = 0;
+                for (int state = word << 6; state < Math.min(stateCount, (word + 1) << 6); state++) {
+                    if (automaton.isAccepting(state)) {
+                        bits |= 1L << state;
+                    }
+                }
+                output.putLong(bits);
+            }
+
+            if (withStateNames) {
+                byte[][] names = new byte[stateCount][];
+                int offset = 0;
+                output.putInt(offset);
+                for (int state = 0; state < stateCount; state++) {
+                    names[state] = automaton.getStateName(state).getBytes(StandardCharsets.UTF_8);
+                    offset += names[state].length;
+                    output.putInt(offset);
+                }
+                for (byte[] name : names) {
+                    output.putBytes(name);
+                }
+            }
+
+            output.flush();
+        }
+    }
+
+    // The table and accept set are bulk-copied out of the mapping; apart from the optional
+    // names nothing is allocated per state
+    static CompiledAutomaton read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            Header header = Header.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER_BYTES)));
+            if (size < header.namesOffset) {
+                throw new IOException("Truncated compiled automaton file");
+            }
+
+            ByteBuffer classMap = map(channel, header.classMapOffset, 2L * header.classMapLength);
+            char[] charClasses = new char[Character.MAX_VALUE + 1];
+            classMap.asCharBuffer().get(charClasses, 0, header.classMapLength);
+
+            StringBuilder symbols = new StringBuilder();
+            for (int c = 0; c < header.classMapLength; c++) {
+                if (charClasses[c] >= header.classCount) {
+                    throw new IOException("Corrupt class map at char " + c);
+                }
+                if (charClasses[c] != 0) {
+                    symbols.append((char) c);
+                }
+            }
+
+            int[] table = new int[Math.multiplyExact(header.stateCount, header.classCount)];
+            for (int from = 0; from < table.length; ) {
+                int count = (int) Math.min(table.length - from, WINDOW_BYTES / Integer.BYTES);
+                map(channel, header.tableOffset + 4L * from, 4L * count).asIntBuffer().get(table, from, count);
+                from += count;
+            }
+            for (int target : table) {
+                if (target < CompiledAutomaton.DEAD_STATE || target >= header.stateCount) {
+                    throw new IOException("Corrupt transition table, target state " + target);
+                }
+            }
+
+            long[] acceptWords = new long[header.acceptWords()];
+            map(channel, header.acceptOffset, 8L * acceptWords.length).asLongBuffer().get(acceptWords);
+            boolean[] accepting = new boolean[header.stateCount];
+            for (int state = 0; state < header.stateCount; state++) {
+                accepting[state] = (acceptWords[state >>> 6] & (1L << state)) != 0;
+            }
+
+            String[] stateNames = header.hasStateNames() ? readStateNames(channel, header, size) : null;
+            return new CompiledAutomaton(stateNames, symbols.toString().toCharArray(), charClasses, header.classCount, table, accepting, header.startState);
+        }
+    }
+
+    private static String[] readStateNames(FileChannel channel, Header header, long size) throws IOException {
+        long offsetsBytes = 4L * (header.stateCount + 1);
+        if (size < header.namesOffset + offsetsBytes) {
+            throw new IOException("Truncated compiled automaton file");
+        }
+
+        int[] offsets = new int[header.stateCount + 1];
+        map(channel, header.namesOffset, offsetsBytes).asIntBuffer().get(offsets);
+        ByteBuffer bytes = map(channel, header.namesOffset + offsetsBytes, size - header.namesOffset - offsetsBytes);
+        // Ascending from zero and within the file, so every name below is in bounds
+        for (int state = 0; state < header.stateCount; state++) {
+            if (offsets[state] < 0 || offsets[state] > offsets[state + 1]) {
+                throw new IOException("Corrupt state name offsets at state " + state);
+            }
+        }
+        if (offsets[header.stateCount] > bytes.limit()) {
+            throw new IOException("Truncated compiled automaton file");
+        }
+
+        String[] names = new String[header.stateCount];
+        byte[] name = new byte[0];
+        for (int state = 0; state < header.stateCount; state++) {
+            int length = offsets[state + 1] - offsets[state];
+            if (name.length < length) {
+                name = new byte[length];
+            }
+            bytes.get(offsets[state], name, 0, length);
+            names[state] = new String(name, 0, length, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    // Chars from the map length on are all in class 0 and are not stored
+    static int classMapLength(CompiledAutomaton automaton) {
+        int length = 0;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (automaton.classOf((char) c) != 0) {
+                length = c + 1;
+            }
+        }
+        return length;
+    }
+
+    static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Streams the sections through one small buffer, so writing does not depend on the file size
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putChar(char value) throws IOException {
+            ensure(Character.BYTES);
+            buffer.putChar(value);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            for (int from = 0; from < bytes.length; ) {
+                ensure(1);
+                int count = Math.min(bytes.length - from, buffer.remaining());
+                buffer.put(bytes, from, count);
+                from += count;
+            }
+        }
+
+        // Zero bytes up to the start of the next section
+        void pad(long offset) throws IOException {
+            while (position + buffer.position() < offset) {
+                ensure(1);
+                buffer.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.util.*;
+
+// Int-indexed snapshot of a FiniteAutomaton shared by the compiled matchers.
+// The start state always gets id 0, the remaining states follow in name order.
+// Epsilon transitions are folded away here: the start set and every successor set
+// are already closed under epsilon moves, so the engines never see them.
+class AutomatonIndex {
+
+    private static final int[] NO_STATES = new int[0];
+
+    final String[] stateNames;
+    final Map<String, Integer> stateIds;
+    final int startState;
+    final int[] startStates;
+    final boolean[] accepting;
+
+    // Only single-character symbols can ever be matched against an input string.
+    final char[] symbols;
+
+    // Characters that lead to the same states from every state form one class, and the
+    // engines index their tables by class. Class 0 holds every character outside the
+    // alphabet and never has a transition, so charClasses covers all 65536 chars.
+    final char[] charClasses;
+    final char[] classRepresentatives;
+    final int classCount;
+
+    // successors[state][class] holds the distinct target states in ascending order.
+    final int[][][] successors;
+
+    AutomatonIndex(FiniteAutomaton automaton) {
+        Set<String> allStates = new TreeSet<>(automaton.getStates());
+        allStates.addAll(automaton.getAcceptStates());
+        for (Map.Entry<String, Map<String, Set<String>>> entry : automaton.getTransitions().entrySet()) {
+            allStates.add(entry.getKey());
+            for (Set<String> targets : entry.getValue().values()) {
+                allStates.addAll(targets);
+            }
+        }
+        allStates.remove(automaton.getStartState());
+
+        stateNames = new String[allStates.size() + 1];
+        stateIds = new HashMap<>();
+        stateNames[0] = automaton.getStartState();
+        stateIds.put(automaton.getStartState(), 0);
+        int nextId = 1;
+        for (String state : allStates) {
+            stateNames[nextId] = state;
+            stateIds.put(state, nextId++);
+        }
+        startState = 0;
+
+        accepting = new boolean[stateNames.length];
+        for (String state : automaton.getAcceptStates()) {
+            accepting[stateIds.get(state)] = true;
+        }
+
+        SortedSet<Character> chars = new TreeSet<>();
+        for (String symbol : automaton.getAlphabet()) {
+            if (symbol.length() == 1) {
+                chars.add(symbol.charAt(0));
+            }
+        }
+
+        symbols = new char[chars.size()];
+        int symbolId = 0;
+        for (char c : chars) {
+            symbols[symbolId++] = c;
+        }
+
+        charClasses = new char[Character.MAX_VALUE + 1];
+        classRepresentatives = computeClasses(automaton);
+        classCount = classRepresentatives.length;
+
+        // closures[state] is the epsilon closure of the state, computed once per state
+        int[][] closures = computeClosures(automaton);
+        startStates = closures[startState];
+
+        successors = new int[stateNames.length][classCount][];
+        int[] stamps = new int[stateNames.length];
+        int[] buffer = new int[stateNames.length];
+        int stamp = 0;
+        for (int state = 0; state < stateNames.length; state++) {
+            Map<String, Set<String>> stateTransitions = automaton.getTransitions().getOrDefault(stateNames[state], Collections.emptyMap());
+            successors[state][0] = NO_STATES;
+            for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                stamp++;
+                int size = 0;
+                for (String target : stateTransitions.getOrDefault(String.valueOf(classRepresentatives[symbolClass]), Collections.emptySet())) {
+                    for (int closed : closures[stateIds.get(target)]) {
+                        if (stamps[closed] != stamp) {
+                            stamps[closed] = stamp;
+                            buffer[size++] = closed;
+                        }
+                    }
+                }
+                int[] targets = size == 0 ? NO_STATES : Arrays.copyOf(buffer, size);
+                Arrays.sort(targets);
+                successors[state][symbolClass] = targets;
+            }
+        }
+    }
+
+    // An already epsilon-free automaton over the classes of another index, as built by NfaReducer
+    AutomatonIndex(AutomatonIndex alphabet, String[] stateNames, boolean[] accepting, int[] startStates, int[][][] successors) {
+        this(alphabet.symbols, alphabet.charClasses, alphabet.classRepresentatives, stateNames, accepting, startStates, successors);
+    }
+
+    // The same over given classes, classRepresentatives holds the smallest char of every class
+    AutomatonIndex(char[] symbols, char[] charClasses, char[] classRepresentatives, String[] stateNames, boolean[] accepting, int[] startStates, int[][][] successors) {
+        this.stateNames = stateNames;
+        this.stateIds = new HashMap<>();
+        for (int state = 0; state < stateNames.length; state++) {
+            stateIds.put(stateNames[state], state);
+        }
+        this.startState = 0;
+        this.startStates = startStates;
+        this.accepting = accepting;
+        this.symbols = symbols;
+        this.charClasses = charClasses;
+        this.classRepresentatives = classRepresentatives;
+        this.classCount = classRepresentatives.length;
+        this.successors = successors;
+    }
+
+    // Partition refinement over the alphabet: every group of symbols that one state sends to
+    // the same target set splits the classes it touches. Afterwards two characters share a
+    // class exactly when no state tells them apart. Fills charClasses, numbers the classes
+    // by their smallest character and returns that character for every class.
+    private char[] computeClasses(FiniteAutomaton automaton) {
+        int[] classOf = new int[symbols.length];
+        int[] splitInto = new int[symbols.length + 1];
+        int[] splitStamps = new int[symbols.length + 1];
+        int classes = symbols.length == 0 ? 0 : 1;
+        int stamp = 0;
+
+        for (Map<String, Set<String>> stateTransitions : automaton.getTransitions().values()) {
+            Map<Set<String>, List<Integer>> groups = new HashMap<>();
+            for (Map.Entry<String, Set<String>> entry : stateTransitions.entrySet()) {
+                // Symbols outside the alphabet are rejected like any other undeclared character
+                int symbol = entry.getKey().length() == 1 ? Arrays.binarySearch(symbols, entry.getKey().charAt(0)) : -1;
+                if (symbol >= 0 && !entry.getValue().isEmpty()) {
+                    groups.computeIfAbsent(entry.getValue(), targets -> new ArrayList<>()).add(symbol);
+                }
+            }
+
+            for (List<Integer> group : groups.values()) {
+                stamp++;
+                for (int symbol : group) {
+                    int oldClass = classOf[symbol];
+                    if (splitStamps[oldClass] != stamp) {
+                        splitStamps[oldClass] = stamp;
+                        splitInto[oldClass] = classes++;
+                        if (classes == splitInto.length) {
+                            splitInto = Arrays.copyOf(splitInto, classes * 2);
+                            splitStamps = Arrays.copyOf(splitStamps, classes * 2);
+                        }
+                    }
+                    classOf[symbol] = splitInto[oldClass];
+                }
+            }
+        }
+
+        // Splits leave gaps in the ids, renumber densely in character order from 1
+        int[] dense = new int[classes];
+        StringBuilder representatives = new StringBuilder("\0");
+        for (int symbol = 0; symbol < symbols.length; symbol++) {
+            if (dense[classOf[symbol]] == 0) {
+                dense[classOf[symbol]] = representatives.length();
+                representatives.append(symbols[symbol]);
+            }
+            charClasses[symbols[symbol]] = (char) dense[classOf[symbol]];
+        }
+
+        if (representatives.length() > Character.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many distinct symbol classes: " + representatives.length());
+        }
+        return representatives.toString().toCharArray();
+    }
+
+    // Depth-first search over epsilon moves from every state, stamps avoid clearing a visited set per state
+    private int[][] computeClosures(FiniteAutomaton automaton) {
+        int[][] result = new int[stateNames.length][];
+        int[] stack = new int[stateNames.length];
+        int[] stamps = new int[stateNames.length];
+        int[] members = new int[stateNames.length];
+
+        for (int state = 0; state < stateNames.length; state++) {
+            int stamp = state + 1;
+            stamps[state] = stamp;
+            stack[0] = state;
+            members[0] = state;
+            int size = 1;
+            int count = 1;
+
+            while (size > 0) {
+                Map<String, Set<String>> stateTransitions = automaton.getTransitions().get(stateNames[stack[--size]]);
+                if (stateTransitions == null) {
+                    continue;
+                }
+                for (String target : stateTransitions.getOrDefault(FiniteAutomaton.EPSILON, Collections.emptySet())) {
+                    int id = stateIds.get(target);
+                    if (stamps[id] != stamp) {
+                        stamps[id] = stamp;
+                        stack[size++] = id;
+                        members[count++] = id;
+                    }
+                }
+            }
+
+            result[state] = Arrays.copyOf(members, count);
+            Arrays.sort(result[state]);
+        }
+
+        return result;
+    }
+
+    int stateCount() {
+        return stateNames.length;
+    }
+
+    // Epsilon-free copy with one transition per symbol of every class
+    FiniteAutomaton toFiniteAutomaton() {
+        Set<String> alphabet = new HashSet<>();
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+        Set<String> acceptStates = new HashSet<>();
+
+        for (char symbol : symbols) {
+            alphabet.add(String.valueOf(symbol));
+        }
+
+        for (int state = 0; state < stateNames.length; state++) {
+            if (accepting[state]) {
+                acceptStates.add(stateNames[state]);
+            }
+
+            Map<String, Set<String>> stateTransitions = new HashMap<>();
+            for (char symbol : symbols) {
+                int[] targets = successors[state][charClasses[symbol]];
+                if (targets.length > 0) {
+                    Set<String> targetNames = new HashSet<>();
+                    for (int target : targets) {
+                        targetNames.add(stateNames[target]);
+                    }
+                    stateTransitions.put(String.valueOf(symbol), targetNames);
+                }
+            }
+            if (!stateTransitions.isEmpty()) {
+                transitions.put(stateNames[state], stateTransitions);
+            }
+        }
+
+        // Several start states are joined by epsilon moves from a fresh one
+        String start = stateNames[0];
+        if (startStates.length > 1) {
+            start = stateNames[0] + "'";
+            while (stateIds.containsKey(start)) {
+                start += "'";
+            }
+            Set<String> startTargets = new HashSet<>();
+            for (int state : startStates) {
+                startTargets.add(stateNames[state]);
+            }
+            transitions.put(start, new HashMap<>(Map.of(FiniteAutomaton.EPSILON, startTargets)));
+        }
+
+        Set<String> states = new HashSet<>(Arrays.asList(stateNames));
+        states.add(start);
+        return new FiniteAutomaton(states, alphabet, transitions, start, acceptStates);
+    }
+}
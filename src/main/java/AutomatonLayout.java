@@ -0,0 +1,354 @@
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Positions of the states of an automaton and its transitions merged per state pair, laid
+// out by the force-directed method of Fruchterman and Reingold: states repel each other,
+// transitions pull their ends together, and the moves are capped by a temperature that
+// cools over a fixed number of rounds. Repulsion is only computed between states in
+// neighbouring cells of a grid, which makes a round linear instead of quadratic, and the
+// states of a round are split over a fork/join pool.
+//
+// Layouts are immutable and cached per automaton object, so the visualizer and the
+// exporters of the same automaton share one computation.
+public class AutomatonLayout {
+
+    // Preferred distance between neighbouring states
+    static final double SPACING = 120;
+    static final double MARGIN = 80;
+
+    private static final int ROUNDS = 200;
+    private static final int STATES_PER_TASK = 256;
+
+    private static final Map<FiniteAutomaton, CompletableFuture<AutomatonLayout>> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    final String[] stateNames;
+    final Map<String, Integer> stateIds;
+    final boolean[] accepting;
+    final int startState;
+    final double[] x;
+    final double[] y;
+
+    // One edge per ordered pair of states that has transitions, labelled with all their symbols
+    final int[] edgeFrom;
+    final int[] edgeTo;
+    final String[] edgeLabels;
+
+    final double width;
+    final double height;
+
+    private AutomatonLayout(String[] stateNames, Map<String, Integer> stateIds, boolean[] accepting, int startState, double[] x, double[] y,
+                            int[] edgeFrom, int[] edgeTo, String[] edgeLabels) {
+        this.stateNames = stateNames;
+        this.stateIds = stateIds;
+        this.accepting = accepting;
+        this.startState = startState;
+        this.x = x;
+        this.y = y;
+        this.edgeFrom = edgeFrom;
+        this.edgeTo = edgeTo;
+        this.edgeLabels = edgeLabels;
+
+        double maxX = 0;
+        double maxY = 0;
+        for (int state = 0; state < x.length; state++) {
+            maxX = Math.max(maxX, x[state]);
+            maxY = Math.max(maxY, y[state]);
+        }
+        this.width = maxX + MARGIN;
+        this.height = maxY + MARGIN;
+    }
+
+    public static AutomatonLayout of(FiniteAutomaton automaton) {
+        return computeAsync(automaton).join();
+    }
+
+    // Starts the layout on the common pool unless it is cached or already running
+    public static CompletableFuture<AutomatonLayout> computeAsync(FiniteAutomaton automaton) {
+        return CACHE.computeIfAbsent(automaton, key -> CompletableFuture.supplyAsync(() -> compute(key, ForkJoinPool.commonPool())));
+    }
+
+    public static AutomatonLayout compute(FiniteAutomaton automaton, ForkJoinPool pool) {
+        // The start state first, the others in name order, so the same automaton always gets the same picture
+        Set<String> names = new TreeSet<>(automaton.getStates());
+        names.addAll(automaton.getAcceptStates());
+        automaton.getTransitions().forEach((state, moves) -> {
+            names.add(state);
+            moves.values().forEach(names::addAll);
+        });
+        names.remove(automaton.getStartState());
+
+        String[] stateNames = new String[names.size() + 1];
+        Map<String, Integer> ids = new HashMap<>();
+        stateNames[0] = automaton.getStartState();
+        ids.put(stateNames[0], 0);
+        int nextId = 1;
+        for (String name : names) {
+            stateNames[nextId] = name;
+            ids.put(name, nextId++);
+        }
+
+        boolean[] accepting = new boolean[stateNames.length];
+        for (String state : automaton.getAcceptStates()) {
+            accepting[ids.get(state)] = true;
+        }
+
+        Map<Long, Set<String>> symbolsOfPair = new HashMap<>();
+        automaton.getTransitions().forEach((state, moves) -> moves.forEach((symbol, targets) -> {
+            for (String target : targets) {
+                long pair = ((long) ids.get(state) << 32) | ids.get(target);
+                symbolsOfPair.computeIfAbsent(pair, key -> new TreeSet<>()).add(symbol);
+            }
+        }));
+
+        List<Long> pairs = new ArrayList<>(symbolsOfPair.keySet());
+        Collections.sort(pairs);
+        int[] edgeFrom = new int[pairs.size()];
+        int[] edgeTo = new int[pairs.size()];
+        String[] edgeLabels = new String[pairs.size()];
+        for (int edge = 0; edge < pairs.size(); edge++) {
+            edgeFrom[edge] = (int) (pairs.get(edge) >>> 32);
+            edgeTo[edge] = (int) (long) pairs.get(edge);
+            edgeLabels[edge] = label(symbolsOfPair.get(pairs.get(edge)));
+        }
+
+        double[][] positions = new ForceLayout(stateNames.length, edgeFrom, edgeTo).run(pool);
+        return new AutomatonLayout(stateNames, ids, accepting, 0, positions[0], positions[1], edgeFrom, edgeTo, edgeLabels);
+    }
+
+    public int getStateCount() {
+        return stateNames.length;
+    }
+
+    public int getEdgeCount() {
+        return edgeFrom.length;
+    }
+
+    public Point2D getPosition(String state) {
+        Integer id = stateIds.get(state);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown state: " + state);
+        }
+        return new Point2D.Double(x[id], y[id]);
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    // Sorted symbols with runs of three or more consecutive chars written as ranges, epsilon as the Greek letter
+    static String label(Set<String> symbols) {
+        StringBuilder label = new StringBuilder();
+        List<String> sorted = new ArrayList<>(symbols);
+        for (int i = 0; i < sorted.size(); ) {
+            String symbol = sorted.get(i);
+            int end = i + 1;
+            if (symbol.length() == 1) {
+                while (end < sorted.size() && sorted.get(end).length() == 1 && sorted.get(end).charAt(0) == symbol.charAt(0) + (end - i)) {
+                    end++;
+                }
+            }
+
+            if (label.length() > 0) {
+                label.append(',');
+            }
+            if (end - i >= 3) {
+                label.append(symbol).append('-').append(sorted.get(end - 1));
+                i = end;
+            } else {
+                label.append(symbol.equals(FiniteAutomaton.EPSILON) ? "\u03B5" : symbol);
+                i++;
+            }
+        }
+        return label.toString();
+    }
+
+    private static class ForceLayout {
+        private final int stateCount;
+        private final int[][] neighbours;
+        private final double side;
+
+        private double[] x;
+        private double[] y;
+        private double[] nextX;
+        private double[] nextY;
+        private double temperature;
+
+        // Grid of the current round: the states of cell c are cellStates[cellStart[c] until cellStart[c + 1]]
+        private final int cellsPerSide;
+        private final int[] cellStart;
+        private final int[] cellStates;
+
+        ForceLayout(int stateCount, int[] edgeFrom, int[] edgeTo) {
+            this.stateCount = stateCount;
+            this.side = Math.max(1, Math.ceil(Math.sqrt(stateCount))) * SPACING * 1.5;
+
+            // Directions do not matter for the forces, self loops do not pull at all
+            int[] degrees = new int[stateCount];
+            for (int edge = 0; edge < edgeFrom.length; edge++) {
+                if (edgeFrom[edge] != edgeTo[edge]) {
+                    degrees[edgeFrom[edge]]++;
+                    degrees[edgeTo[edge]]++;
+                }
+            }
+            neighbours = new int[stateCount][];
+            for (int state = 0; state < stateCount; state++) {
+                neighbours[state] = new int[degrees[state]];
+                degrees[state] = 0;
+            }
+            for (int edge = 0; edge < edgeFrom.length; edge++) {
+                int from = edgeFrom[edge];
+                int to = edgeTo[edge];
+                if (from != to) {
+                    neighbours[from][degrees[from]++] = to;
+                    neighbours[to][degrees[to]++] = from;
+                }
+            }
+
+            this.cellsPerSide = (int) Math.max(1, Math.ceil(side / (2 * SPACING)));
+            this.cellStart = new int[cellsPerSide * cellsPerSide + 1];
+            this.cellStates = new int[stateCount];
+
+            // A jittered grid as the starting point, seeded so layouts are reproducible
+            Random random = new Random(stateCount);
+            int columns = (int) Math.ceil(Math.sqrt(stateCount));
+            x = new double[stateCount];
+            y = new double[stateCount];
+            for (int state = 0; state < stateCount; state++) {
+                x[state] = (state % columns + 0.5 + random.nextDouble() * 0.2) * side / columns;
+                y[state] = (state / columns + 0.5 + random.nextDouble() * 0.2) * side / columns;
+            }
+            nextX = new double[stateCount];
+            nextY = new double[stateCount];
+        }
+
+        double[][] run(ForkJoinPool pool) {
+            for (int round = 0; round < ROUNDS; round++) {
+                temperature = side / 10 * (1 - (double) round / ROUNDS);
+                fillGrid();
+                pool.invoke(new ForceTask(0, stateCount));
+
+                double[] swap = x;
+                x = nextX;
+                nextX = swap;
+                swap = y;
+                y = nextY;
+                nextY = swap;
+            }
+
+            // Shift the picture so it starts at the margin
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            for (int state = 0; state < stateCount; state++) {
+                minX = Math.min(minX, x[state]);
+                minY = Math.min(minY, y[state]);
+            }
+            for (int state = 0; state < stateCount; state++) {
+                x[state] += MARGIN - minX;
+                y[state] += MARGIN - minY;
+            }
+            return new double[][]{x, y};
+        }
+
+        // Counting sort of the states into their cells
+        private void fillGrid() {
+            Arrays.fill(cellStart, 0);
+            for (int state = 0; state < stateCount; state++) {
+                cellStart[cellOf(state) + 1]++;
+            }
+            for (int cell = 0; cell < cellStart.length - 1; cell++) {
+                cellStart[cell + 1] += cellStart[cell];
+            }
+            int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+            for (int state = 0; state < stateCount; state++) {
+                cellStates[fill[cellOf(state)]++] = state;
+            }
+        }
+
+        private int cellOf(int state) {
+            return cellRow(y[state]) * cellsPerSide + cellRow(x[state]);
+        }
+
+        private int cellRow(double coordinate) {
+            return Math.min(cellsPerSide - 1, Math.max(0, (int) (coordinate / (2 * SPACING))));
+        }
+
+        private void move(int state) {
+            double dx = 0;
+            double dy = 0;
+            double k = SPACING;
+
+            int row = cellRow(y[state]);
+            int column = cellRow(x[state]);
+            for (int cellY = Math.max(0, row - 1); cellY <= Math.min(cellsPerSide - 1, row + 1); cellY++) {
+                for (int cellX = Math.max(0, column - 1); cellX <= Math.min(cellsPerSide - 1, column + 1); cellX++) {
+                    int cell = cellY * cellsPerSide + cellX;
+                    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                        int other = cellStates[i];
+                        if (other == state) {
+                            continue;
+                        }
+                        double ox = x[state] - x[other];
+                        double oy = y[state] - y[other];
+                        double distance = Math.max(0.01, Math.sqrt(ox * ox + oy * oy));
+                        double force = k * k / distance;
+                        dx += ox / distance * force;
+                        dy += oy / distance * force;
+                    }
+                }
+            }
+
+            for (int other : neighbours[state]) {
+                double ox = x[state] - x[other];
+                double oy = y[state] - y[other];
+                double distance = Math.max(0.01, Math.sqrt(ox * ox + oy * oy));
+                double force = distance * distance / k;
+                dx -= ox / distance * force;
+                dy -= oy / distance * force;
+            }
+
+            double length = Math.max(0.01, Math.sqrt(dx * dx + dy * dy));
+            double step = Math.min(length, temperature);
+            nextX[state] = Math.min(side, Math.max(0, x[state] + dx / length * step));
+            nextY[state] = Math.min(side, Math.max(0, y[state] + dy / length * step));
+        }
+
+        private class ForceTask extends RecursiveAction {
+            private final int from;
+            private final int to;
+
+            ForceTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > STATES_PER_TASK) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new ForceTask(from, middle), new ForceTask(middle, to));
+                    return;
+                }
+
+                for (int state = from; state < to; state++) {
+                    move(state);
+                }
+            }
+        }
+    }
+}
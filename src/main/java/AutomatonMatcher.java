@@ -0,0 +1,93 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+// Incremental matcher that is fed the input piece by piece. It only keeps the current
+// state, so memory use does not depend on the input length, and once it reaches a dead
+// state the rest of the input is skipped.
+public interface AutomatonMatcher {
+
+    int BUFFER_SIZE = 8192;
+
+    void feed(char symbol);
+
+    boolean isAccepting();
+
+    boolean isDead();
+
+    void reset();
+
+    default void feed(CharSequence input) {
+        for (int i = 0, length = input.length(); i < length && !isDead(); i++) {
+            feed(input.charAt(i));
+        }
+    }
+
+    default void feed(CharBuffer input) {
+        while (input.hasRemaining() && !isDead()) {
+            feed(input.get());
+        }
+
+        // A dead matcher can never accept again, the remaining input is consumed unread
+        input.position(input.limit());
+    }
+
+    default boolean matches(CharSequence input) {
+        reset();
+        feed(input);
+        return isAccepting();
+    }
+
+    default boolean matches(Reader reader) throws IOException {
+        reset();
+        CharBuffer buffer = CharBuffer.allocate(BUFFER_SIZE);
+
+        while (!isDead() && reader.read(buffer) != -1) {
+            buffer.flip();
+            feed(buffer);
+            buffer.clear();
+        }
+
+        return isAccepting();
+    }
+
+    default boolean matches(ReadableByteChannel channel, Charset charset) throws IOException {
+        reset();
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        boolean endOfInput = false;
+
+        while (!isDead() && !endOfInput) {
+            endOfInput = channel.read(bytes) == -1;
+            bytes.flip();
+
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (endOfInput && result.isUnderflow()) {
+                    decoder.flush(chars);
+                }
+
+                chars.flip();
+                feed(chars);
+                chars.clear();
+            } while (result.isOverflow() && !isDead());
+
+            bytes.compact();
+        }
+
+        return isAccepting();
+    }
+}
@@ -0,0 +1,136 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+
+// The drawing surface of FiniteAutomatonVisualizer. The wheel zooms around the cursor and
+// dragging pans. Frames are drawn into a backing image that is only redrawn when the view
+// changes, so repaints from the window system just copy it.
+class AutomatonPanel extends JPanel {
+
+    private static final double MIN_SCALE = 0.01;
+    private static final double MAX_SCALE = 4;
+
+    private final int stateCount;
+    private String message;
+
+    private LayoutPainter painter;
+
+    // The layout point in the top left corner and the pixels per layout unit
+    private double left;
+    private double top;
+    private double scale = 1;
+
+    private BufferedImage backing;
+    private boolean dirty = true;
+    private Point dragFrom;
+
+    AutomatonPanel(int stateCount) {
+        this.stateCount = stateCount;
+        this.message = "Computing the layout of " + stateCount + " states...";
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent event) {
+                dragFrom = event.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent event) {
+                if (dragFrom != null) {
+                    left -= (event.getX() - dragFrom.x) / scale;
+                    top -= (event.getY() - dragFrom.y) / scale;
+                    dragFrom = event.getPoint();
+                    invalidateView();
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent event) {
+                dragFrom = null;
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent event) {
+                double zoomed = Math.min(MAX_SCALE, Math.max(MIN_SCALE, scale * Math.pow(1.1, -event.getPreciseWheelRotation())));
+                left += event.getX() / scale - event.getX() / zoomed;
+                top += event.getY() / scale - event.getY() / zoomed;
+                scale = zoomed;
+                invalidateView();
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent event) {
+                invalidateView();
+            }
+        });
+    }
+
+    // Computes the layout in the background, call it once the panel has its size
+    void load(FiniteAutomaton automaton) {
+        AutomatonLayout.computeAsync(automaton).whenComplete((layout, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                fail(error);
+            } else {
+                show(layout);
+            }
+        }));
+    }
+
+    // Starts with the whole automaton in view, but never magnified
+    void show(AutomatonLayout layout) {
+        this.painter = new LayoutPainter(layout);
+        this.scale = Math.max(MIN_SCALE, Math.min(1, Math.min(getWidth() / layout.width, getHeight() / layout.height)));
+        this.left = 0;
+        this.top = 0;
+        invalidateView();
+    }
+
+    void fail(Throwable error) {
+        message = "Could not lay out " + stateCount + " states: " + error.getMessage();
+        repaint();
+    }
+
+    private void invalidateView() {
+        dirty = true;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+
+        if (painter == null) {
+            g.drawString(message, 20, 30);
+            return;
+        }
+
+        int width = Math.max(1, getWidth());
+        int height = Math.max(1, getHeight());
+        if (backing == null || backing.getWidth() != width || backing.getHeight() != height) {
+            backing = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            dirty = true;
+        }
+
+        if (dirty) {
+            Graphics2D image = backing.createGraphics();
+            image.setColor(getBackground());
+            image.fillRect(0, 0, width, height);
+            image.setFont(getFont());
+            painter.paint(image, left, top, scale, width, height);
+            image.dispose();
+            dirty = false;
+        }
+
+        g.drawImage(backing, 0, 0, null);
+    }
+}
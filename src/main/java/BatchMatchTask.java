@@ -0,0 +1,49 @@
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+// Fork/join task that checks a range of inputs. Every leaf creates one matcher and reuses
+// it for the whole range, and leaves cover whole 64-input words of the result bitset so
+// they never write to the same long.
+class BatchMatchTask extends RecursiveAction {
+
+    private final List<? extends CharSequence> inputs;
+    private final Supplier<AutomatonMatcher> matchers;
+    private final long[] resultWords;
+    private final int from;
+    private final int to;
+    private final int leafSize;
+
+    BatchMatchTask(List<? extends CharSequence> inputs, Supplier<AutomatonMatcher> matchers, long[] resultWords, int from, int to, int leafSize) {
+        this.inputs = inputs;
+        this.matchers = matchers;
+        this.resultWords = resultWords;
+        this.from = from;
+        this.to = to;
+        this.leafSize = leafSize;
+    }
+
+    static int leafSize(int inputCount, int parallelism) {
+        // About eight leaves per worker keeps the pool balanced when input lengths vary
+        int leaves = Math.max(1, parallelism * 8);
+        int size = (inputCount + leaves - 1) / leaves;
+        return Math.max(64, (size + 63) & ~63);
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= leafSize) {
+            AutomatonMatcher matcher = matchers.get();
+            for (int i = from; i < to; i++) {
+                if (matcher.matches(inputs.get(i))) {
+                    resultWords[i >>> 6] |= 1L << i;
+                }
+            }
+            return;
+        }
+
+        int middle = from + (((to - from) / 2 + 63) & ~63);
+        invokeAll(new BatchMatchTask(inputs, matchers, resultWords, from, middle, leafSize),
+                new BatchMatchTask(inputs, matchers, resultWords, middle, to, leafSize));
+    }
+}
@@ -0,0 +1,185 @@
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+// Simulates a non-deterministic automaton without determinizing it. The set of active
+// states is a bitset packed into longs, and every (state, symbol class) pair has a precomputed
+// successor mask, so a step is a handful of word-wide ORs. Automata with at most 64
+// states keep the whole set in a single long.
+public class BitParallelNfa {
+
+    private final int stateCount;
+    private final int words;
+    private final int classCount;
+    private final char[] charClasses;
+    private final long[] successorMasks;
+    private final long[] startMask;
+    private final long[] acceptMask;
+
+    BitParallelNfa(AutomatonIndex index) {
+        this.stateCount = index.stateCount();
+        this.words = (stateCount + 63) >>> 6;
+        this.classCount = index.classCount;
+        this.charClasses = index.charClasses;
+        this.successorMasks = new long[stateCount * classCount * words];
+        this.startMask = new long[words];
+        this.acceptMask = new long[words];
+
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                int base = (state * classCount + symbolClass) * words;
+                for (int target : index.successors[state][symbolClass]) {
+                    successorMasks[base + (target >>> 6)] |= 1L << target;
+                }
+            }
+            if (index.accepting[state]) {
+                acceptMask[state >>> 6] |= 1L << state;
+            }
+        }
+
+        for (int state : index.startStates) {
+            startMask[state >>> 6] |= 1L << state;
+        }
+    }
+
+    public boolean matches(CharSequence input) {
+        if (words == 1) {
+            return matchesSingleWord(input);
+        }
+
+        long[] current = Arrays.copyOf(startMask, words);
+        long[] next = new long[words];
+
+        for (int i = 0, length = input.length(); i < length; i++) {
+            if (!step(current, classOf(input.charAt(i)), next)) {
+                return false;
+            }
+
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+
+        return intersects(current, acceptMask);
+    }
+
+    private boolean matchesSingleWord(CharSequence input) {
+        long current = startMask[0];
+
+        for (int i = 0, length = input.length(); i < length; i++) {
+            int symbolClass = classOf(input.charAt(i));
+            long next = 0;
+            for (long bits = current; bits != 0; bits &= bits - 1) {
+                next |= successorMasks[Long.numberOfTrailingZeros(bits) * classCount + symbolClass];
+            }
+
+            if (next == 0) {
+                return false;
+            }
+            current = next;
+        }
+
+        return (current & acceptMask[0]) != 0;
+    }
+
+    public AutomatonMatcher matcher() {
+        return new Matcher();
+    }
+
+    // Writes the successors of the current set into next and reports whether any state is left.
+    boolean step(long[] current, int symbolClass, long[] next) {
+        Arrays.fill(next, 0L);
+        long any = 0;
+
+        for (int word = 0; word < words; word++) {
+            for (long bits = current[word]; bits != 0; bits &= bits - 1) {
+                int state = (word << 6) | Long.numberOfTrailingZeros(bits);
+                int base = (state * classCount + symbolClass) * words;
+                for (int k = 0; k < words; k++) {
+                    next[k] |= successorMasks[base + k];
+                    any |= successorMasks[base + k];
+                }
+            }
+        }
+
+        return any != 0;
+    }
+
+    int classOf(char c) {
+        return charClasses[c];
+    }
+
+    static boolean intersects(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] & b[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    long[] getStartMask() {
+        return startMask;
+    }
+
+    long[] getAcceptMask() {
+        return acceptMask;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public int getWordCount() {
+        return words;
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    private class Matcher implements AutomatonMatcher {
+        private long[] current = Arrays.copyOf(startMask, words);
+        private long[] next = new long[words];
+        private boolean dead;
+
+        @Override
+        public void feed(char symbol) {
+            if (dead) {
+                return;
+            }
+
+            if (!step(current, classOf(symbol), next)) {
+                dead = true;
+                return;
+            }
+
+            long[] swap = current;
+            current = next;
+            next = swap;
+        }
+
+        @Override
+        public void feed(CharBuffer input) {
+            while (input.hasRemaining() && !dead) {
+                feed(input.get());
+            }
+            input.position(input.limit());
+        }
+
+        @Override
+        public boolean isAccepting() {
+            return !dead && intersects(current, acceptMask);
+        }
+
+        @Override
+        public boolean isDead() {
+            return dead;
+        }
+
+        @Override
+        public void reset() {
+            System.arraycopy(startMask, 0, current, 0, words);
+            dead = false;
+        }
+    }
+}
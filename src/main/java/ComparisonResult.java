@@ -0,0 +1,33 @@
+import java.util.Optional;
+
+// Outcome of a language equivalence or inclusion check. When the check fails it carries
+// a string on which the two languages differ.
+public class ComparisonResult {
+
+    private final String counterexample;
+
+    private ComparisonResult(String counterexample) {
+        this.counterexample = counterexample;
+    }
+
+    static ComparisonResult holding() {
+        return new ComparisonResult(null);
+    }
+
+    static ComparisonResult failing(String counterexample) {
+        return new ComparisonResult(counterexample);
+    }
+
+    public boolean holds() {
+        return counterexample == null;
+    }
+
+    public Optional<String> getCounterexample() {
+        return Optional.ofNullable(counterexample);
+    }
+
+    @Override
+    public String toString() {
+        return holds() ? "holds" : "fails on \"" + counterexample + "\"";
+    }
+}
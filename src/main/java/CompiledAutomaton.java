@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+// Dense table form of a deterministic automaton. States are plain ints and the columns are
+// symbol classes, so matching an input is a single loop over its characters without any
+// allocation: one char-to-class lookup and one table load per character. Characters
+// outside the alphabet fall into class 0, whose column is dead in every state.
+public class CompiledAutomaton implements DeterministicAutomaton {
+
+    private final String[] stateNames;
+    private final char[] symbols;
+    private final char[] charClasses;
+    private final int classCount;
+    private final int[] table;
+    private final boolean[] accepting;
+    private final int startState;
+
+    CompiledAutomaton(String[] stateNames, char[] symbols, char[] charClasses, int classCount, int[] table, boolean[] accepting, int startState) {
+        this.stateNames = stateNames;
+        this.symbols = symbols;
+        this.charClasses = charClasses;
+        this.classCount = classCount;
+        this.table = table;
+        this.accepting = accepting;
+        this.startState = startState;
+    }
+
+    static CompiledAutomaton fromDeterministic(AutomatonIndex index) {
+        int classCount = index.classCount;
+        int[] table = new int[index.stateCount() * classCount];
+
+        for (int state = 0; state < index.stateCount(); state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                int[] targets = index.successors[state][symbolClass];
+                if (targets.length > 1) {
+                    throw new IllegalArgumentException("State " + index.stateNames[state] + " has several transitions on " + index.classRepresentatives[symbolClass]);
+                }
+                table[state * classCount + symbolClass] = targets.length == 0 ? DEAD_STATE : targets[0];
+            }
+        }
+
+        return new CompiledAutomaton(index.stateNames, index.symbols, index.charClasses, classCount, table, index.accepting, index.startState);
+    }
+
+    // An epsilon-free automaton over the symbol classes of this one, with successors[state][class]
+    AutomatonIndex indexOver(String[] stateNames, boolean[] accepting, int[] startStates, int[][][] successors) {
+        char[] representatives = new char[classCount];
+        for (int i = symbols.length - 1; i >= 0; i--) {
+            representatives[charClasses[symbols[i]]] = symbols[i];
+        }
+        return new AutomatonIndex(symbols, charClasses, representatives, stateNames, accepting, startStates, successors);
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int state = startState;
+
+        for (int i = 0, length = input.length(); i < length; i++) {
+            state = table[state * classCount + charClasses[input.charAt(i)]];
+            if (state == DEAD_STATE) {
+                return false;
+            }
+        }
+
+        return accepting[state];
+    }
+
+    @Override
+    public int step(int state, char c) {
+        return table[state * classCount + charClasses[c]];
+    }
+
+    @Override
+    public boolean isAccepting(int state) {
+        return state != DEAD_STATE && accepting[state];
+    }
+
+    int target(int state, int symbolClass) {
+        return table[state * classCount + symbolClass];
+    }
+
+    @Override
+    public int classOf(char c) {
+        return charClasses[c];
+    }
+
+    public CompiledAutomaton minimize() {
+        return HopcroftMinimizer.minimize(this);
+    }
+
+    // Builds an automaton over the same symbol classes from transition triples, where new state i is
+    // named after the old state representatives[i]. States are renumbered breadth-first from
+    // the start state, so automata with the same structure always get the same table.
+    CompiledAutomaton rebuild(int[] representatives, int[] tails, int[] labels, int[] heads, boolean[] acceptingStates, int start) {
+        int[] transitions = new int[representatives.length * classCount];
+        Arrays.fill(transitions, DEAD_STATE);
+        for (int t = 0; t < tails.length; t++) {
+            transitions[tails[t] * classCount + labels[t]] = heads[t];
+        }
+
+        int[] newIds = new int[representatives.length];
+        int[] order = new int[representatives.length];
+        Arrays.fill(newIds, -1);
+        newIds[start] = 0;
+        order[0] = start;
+        int count = 1;
+        for (int i = 0; i < count; i++) {
+            for (int symbol = 0; symbol < classCount; symbol++) {
+                int target = transitions[order[i] * classCount + symbol];
+                if (target != DEAD_STATE && newIds[target] < 0) {
+                    newIds[target] = count;
+                    order[count++] = target;
+                }
+            }
+        }
+
+        String[] names = stateNames == null ? null : new String[count];
+        boolean[] newAccepting = new boolean[count];
+        int[] newTable = new int[count * classCount];
+        for (int i = 0; i < count; i++) {
+            int state = order[i];
+            if (names != null) {
+                names[i] = stateNames[representatives[state]];
+            }
+            newAccepting[i] = acceptingStates[state];
+            for (int symbol = 0; symbol < classCount; symbol++) {
+                int target = transitions[state * classCount + symbol];
+                newTable[i * classCount + symbol] = target == DEAD_STATE ? DEAD_STATE : newIds[target];
+            }
+        }
+
+        return new CompiledAutomaton(names, symbols, charClasses, classCount, newTable, newAccepting, 0);
+    }
+
+    // Writes the automaton in the binary format of AutomatonFormat. Without state names the
+    // file holds only the table, class map and accept set, and loaded states are named by id.
+    public void save(Path file) throws IOException {
+        save(file, true);
+    }
+
+    public void save(Path file, boolean withStateNames) throws IOException {
+        AutomatonFormat.write(this, file, withStateNames);
+    }
+
+    public static CompiledAutomaton load(Path file) throws IOException {
+        return AutomatonFormat.read(file);
+    }
+
+    public FiniteAutomaton toFiniteAutomaton() {
+        Set<String> states = new HashSet<>();
+        Set<String> alphabet = new HashSet<>();
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+        Set<String> acceptStates = new HashSet<>();
+
+        for (char symbol : symbols) {
+            alphabet.add(String.valueOf(symbol));
+        }
+
+        for (int state = 0; state < getStateCount(); state++) {
+            states.add(getStateName(state));
+            if (accepting[state]) {
+                acceptStates.add(getStateName(state));
+            }
+
+            Map<String, Set<String>> stateTransitions = new HashMap<>();
+            for (char symbol : symbols) {
+                int target = step(state, symbol);
+                if (target != DEAD_STATE) {
+                    stateTransitions.put(String.valueOf(symbol), Set.of(getStateName(target)));
+                }
+            }
+
+            if (!stateTransitions.isEmpty()) {
+                transitions.put(getStateName(state), stateTransitions);
+            }
+        }
+
+        return new FiniteAutomaton(states, alphabet, transitions, getStateName(startState), acceptStates);
+    }
+
+    public String getStateName(int state) {
+        return stateNames == null ? "q" + state : stateNames[state];
+    }
+
+    @Override
+    public int getStateCount() {
+        return accepting.length;
+    }
+
+    public int getSymbolCount() {
+        return symbols.length;
+    }
+
+    @Override
+    public int getClassCount() {
+        return classCount;
+    }
+
+    @Override
+    public int getStartState() {
+        return startState;
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return (long) table.length * Integer.BYTES + (long) charClasses.length * Character.BYTES
+                + (long) symbols.length * Character.BYTES + accepting.length;
+    }
+
+    public OffHeapAutomaton toOffHeap() {
+        return OffHeapAutomaton.copyOf(this);
+    }
+}
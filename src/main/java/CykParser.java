@@ -0,0 +1,358 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Membership and parse trees for grammars in Chomsky normal form by the algorithm of Cocke,
+// Younger and Kasami. Cell (i, j) of the table is the bitset of the non-terminals that
+// derive the substring from i to j, and A is in it when some binary rule A -> B C has B
+// in (i, k) and C in (k, j) for a split k between. Binary rules are indexed by their pair
+// B C, and every pair is tried once per cell with the heads of all its rules at once.
+//
+// Finished cells are stored transposed, as bitsets per non-terminal: ends[B][i] has bit k
+// when B derives (i, k), starts[C][j] has bit k when C derives (k, j). The splits that
+// work for B C in cell (i, j) are then ends[B][i] & starts[C][j], so all splits of a cell
+// are tried 64 at a time instead of one by one. The unit rules normalizeToChomskyForm
+// leaves behind for a renamed starting symbol are folded into the heads beforehand.
+//
+// All cells of one length depend only on shorter ones, so every diagonal is split over a
+// fork/join pool. Cells of one diagonal have different i and j and so never write into
+// the same row. A CykParser is immutable and can be shared between threads.
+public class CykParser {
+
+    private static final int WORDS_PER_TASK = 1 << 14;
+
+    private final GrammarIndex grammar;
+    private final int nonTerminalCount;
+    private final int words;
+    private final boolean acceptsEmpty;
+
+    // Bitset of the non-terminals deriving c, unit rules included
+    private final Map<Character, long[]> terminalHeads = new HashMap<>();
+
+    // Binary rules by right hand side: pair p is pairLeft[p] pairRight[p], and pairHeads[p] the bitset of its heads
+    private final int[] pairLeft;
+    private final int[] pairRight;
+    private final long[][] pairHeads;
+
+    // unitNext[A][D] is the first step of a shortest chain of unit rules from A to D, A itself if A = D, -1 if there is none
+    private final int[][] unitNext;
+
+    public CykParser(Grammar grammar) {
+        this.grammar = new GrammarIndex(grammar);
+        this.nonTerminalCount = this.grammar.getNonTerminalCount();
+        this.words = (nonTerminalCount + 63) >>> 6;
+
+        unitNext = new int[nonTerminalCount][nonTerminalCount];
+        for (int from = 0; from < nonTerminalCount; from++) {
+            findUnitChains(from);
+        }
+        long[][] unitClosure = new long[nonTerminalCount][words];
+        for (int from = 0; from < nonTerminalCount; from++) {
+            for (int to = 0; to < nonTerminalCount; to++) {
+                if (unitNext[from][to] != -1) {
+                    unitClosure[to][from >>> 6] |= 1L << from;
+                }
+            }
+        }
+
+        boolean empty = false;
+        Map<Long, long[]> pairs = new LinkedHashMap<>();
+        for (int rule = 0; rule < this.grammar.getRuleCount(); rule++) {
+            int head = this.grammar.ruleHeads[rule];
+            int[] body = this.grammar.ruleBodies[rule];
+            if (body.length == 0 && head == 0) {
+                empty = true;
+            } else if (body.length == 1 && GrammarIndex.isTerminal(body[0])) {
+                or(terminalHeads.computeIfAbsent(GrammarIndex.terminalChar(body[0]), key -> new long[words]), unitClosure[head]);
+            } else if (body.length == 2 && !GrammarIndex.isTerminal(body[0]) && !GrammarIndex.isTerminal(body[1])) {
+                or(pairs.computeIfAbsent((long) body[0] << 32 | body[1], key -> new long[words]), unitClosure[head]);
+            } else if (body.length != 1 || GrammarIndex.isTerminal(body[0])) {
+                throw new IllegalArgumentException("The production " + this.grammar.name(head) + " -> "
+                        + describe(body) + " is not in Chomsky normal form.");
+            }
+        }
+        this.acceptsEmpty = empty;
+
+        pairLeft = new int[pairs.size()];
+        pairRight = new int[pairs.size()];
+        pairHeads = new long[pairs.size()][];
+        int pair = 0;
+        for (Map.Entry<Long, long[]> entry : pairs.entrySet()) {
+            pairLeft[pair] = (int) (entry.getKey() >>> 32);
+            pairRight[pair] = (int) (long) entry.getKey();
+            pairHeads[pair++] = entry.getValue();
+        }
+    }
+
+    // Breadth first over the unit rules, so the recorded chains are shortest and following them always ends
+    private void findUnitChains(int from) {
+        int[] next = unitNext[from];
+        Arrays.fill(next, -1);
+        next[from] = from;
+        int[] queue = new int[nonTerminalCount];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int symbol = queue[head++];
+            for (int rule : grammar.rulesOf[symbol]) {
+                int[] body = grammar.ruleBodies[rule];
+                if (body.length == 1 && !GrammarIndex.isTerminal(body[0]) && next[body[0]] == -1) {
+                    next[body[0]] = symbol == from ? body[0] : next[symbol];
+                    queue[tail++] = body[0];
+                }
+            }
+        }
+    }
+
+    public boolean recognize(CharSequence input) {
+        return recognize(input, ForkJoinPool.commonPool());
+    }
+
+    public boolean recognize(CharSequence input, ForkJoinPool pool) {
+        if (input.length() == 0) {
+            return acceptsEmpty;
+        }
+        Chart chart = fill(input, pool);
+        return chart != null && chart.contains(0, 0, input.length());
+    }
+
+    public Optional<ParseTree> parse(CharSequence input) {
+        return parse(input, ForkJoinPool.commonPool());
+    }
+
+    // One of the parse trees when the grammar derives the input, the first rule and split that work win
+    public Optional<ParseTree> parse(CharSequence input, ForkJoinPool pool) {
+        if (input.length() == 0) {
+            return acceptsEmpty ? Optional.of(ParseTree.node(grammar.nonTerminals[0], List.of())) : Optional.empty();
+        }
+        Chart chart = fill(input, pool);
+        if (chart == null || !chart.contains(0, 0, input.length())) {
+            return Optional.empty();
+        }
+        return Optional.of(tree(chart, input));
+    }
+
+    public int getNonTerminalCount() {
+        return nonTerminalCount;
+    }
+
+    // Null when some char is derived by no non-terminal at all
+    private Chart fill(CharSequence input, ForkJoinPool pool) {
+        int n = input.length();
+        Chart chart = new Chart(n);
+
+        for (int start = 0; start < n; start++) {
+            long[] heads = terminalHeads.get(input.charAt(start));
+            if (heads == null) {
+                return null;
+            }
+            chart.store(heads, start, start + 1);
+        }
+
+        for (int length = 2; length <= n; length++) {
+            int cells = n - length + 1;
+            if (chart.work(cells, length) <= WORDS_PER_TASK) {
+                chart.fillCells(length, 0, cells, new long[words]);
+            } else {
+                pool.invoke(chart.new DiagonalTask(length, 0, cells));
+            }
+        }
+        return chart;
+    }
+
+    // Top down with an explicit stack, the trees of long inputs are as deep as the input is long.
+    // Every child is added to the children of its parent when it is taken from the stack, and the
+    // right child is pushed first, so the children end up in order.
+    private ParseTree tree(Chart chart, CharSequence input) {
+        List<ParseTree> root = new ArrayList<>(1);
+        Deque<int[]> pending = new ArrayDeque<>();
+        Deque<List<ParseTree>> parents = new ArrayDeque<>();
+        pending.push(new int[]{0, 0, input.length()});
+        parents.push(root);
+
+        while (!pending.isEmpty()) {
+            int[] span = pending.pop();
+            List<ParseTree> siblings = parents.pop();
+            int symbol = span[0];
+            int start = span[1];
+            int end = span[2];
+
+            // The symbol may be in the cell through a chain of unit rules to one that has a rule for the span itself
+            int target = -1;
+            int rule = -1;
+            int split = -1;
+            for (int candidate = 0; candidate < nonTerminalCount && rule == -1; candidate++) {
+                if (unitNext[symbol][candidate] == -1 || !chart.contains(candidate, start, end)) {
+                    continue;
+                }
+                for (int next : grammar.rulesOf[candidate]) {
+                    int[] body = grammar.ruleBodies[next];
+                    if (end - start == 1 && body.length == 1 && body[0] == GrammarIndex.terminal(input.charAt(start))) {
+                        rule = next;
+                    } else if (end - start > 1 && body.length == 2) {
+                        split = chart.firstSplit(body[0], body[1], start, end);
+                        rule = split == -1 ? -1 : next;
+                    }
+                    if (rule != -1) {
+                        target = candidate;
+                        break;
+                    }
+                }
+            }
+            if (rule == -1) {
+                throw new IllegalStateException("The table has no derivation of " + grammar.nonTerminals[symbol] + ".");
+            }
+
+            for (int step = symbol; step != target; step = unitNext[step][target]) {
+                List<ParseTree> children = new ArrayList<>(1);
+                siblings.add(ParseTree.node(grammar.nonTerminals[step], children));
+                siblings = children;
+            }
+            List<ParseTree> children = new ArrayList<>(2);
+            siblings.add(ParseTree.node(grammar.nonTerminals[target], children));
+
+            int[] body = grammar.ruleBodies[rule];
+            if (body.length == 1) {
+                children.add(ParseTree.leaf(grammar.name(body[0])));
+            } else {
+                pending.push(new int[]{body[1], split, end});
+                parents.push(children);
+                pending.push(new int[]{body[0], start, split});
+                parents.push(children);
+            }
+        }
+        return root.get(0);
+    }
+
+    private String describe(int[] body) {
+        StringBuilder result = new StringBuilder();
+        for (int symbol : body) {
+            result.append(grammar.name(symbol));
+        }
+        return result.length() == 0 ? "\u03B5" : result.toString();
+    }
+
+    private static void or(long[] target, long[] bits) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= bits[i];
+        }
+    }
+
+    // The rows of symbol s at position i are at (s * (n + 1) + i) * rowWords of ends and starts
+    private class Chart {
+        private final int n;
+        private final int rowWords;
+        private final long[] ends;
+        private final long[] starts;
+
+        Chart(int n) {
+            this.n = n;
+            this.rowWords = (n + 64) >>> 6;
+            long size = (long) nonTerminalCount * (n + 1) * rowWords;
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("An input of length " + n + " does not fit into a CYK table.");
+            }
+            this.ends = new long[(int) size];
+            this.starts = new long[(int) size];
+        }
+
+        private int row(int symbol, int position) {
+            return (symbol * (n + 1) + position) * rowWords;
+        }
+
+        boolean contains(int symbol, int start, int end) {
+            return (ends[row(symbol, start) + (end >>> 6)] & 1L << end) != 0;
+        }
+
+        // Words an AND of all pairs touches for the cells of a diagonal, to size the tasks
+        long work(int cells, int length) {
+            return (long) cells * pairLeft.length * ((length >>> 6) + 1);
+        }
+
+        void store(long[] symbols, int start, int end) {
+            for (int word = 0; word < words; word++) {
+                long bits = symbols[word];
+                while (bits != 0) {
+                    int symbol = word << 6 | Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    ends[row(symbol, start) + (end >>> 6)] |= 1L << end;
+                    starts[row(symbol, end) + (start >>> 6)] |= 1L << start;
+                }
+            }
+        }
+
+        void fillCells(int length, int from, int to, long[] cell) {
+            for (int start = from; start < to; start++) {
+                int end = start + length;
+                Arrays.fill(cell, 0);
+                for (int pair = 0; pair < pairLeft.length; pair++) {
+                    if (!containsAll(cell, pairHeads[pair]) && firstSplit(pairLeft[pair], pairRight[pair], start, end) != -1) {
+                        or(cell, pairHeads[pair]);
+                    }
+                }
+                store(cell, start, end);
+            }
+        }
+
+        // The smallest k with left in (start, k) and right in (k, end), -1 if there is none
+        int firstSplit(int left, int right, int start, int end) {
+            int leftRow = row(left, start);
+            int rightRow = row(right, end);
+            int first = start + 1;
+            int last = end - 1;
+            for (int word = first >>> 6; word <= last >>> 6; word++) {
+                long bits = ends[leftRow + word] & starts[rightRow + word];
+                if (word == first >>> 6) {
+                    bits &= -1L << first;
+                }
+                if (word == last >>> 6) {
+                    bits &= -1L >>> (63 - (last & 63));
+                }
+                if (bits != 0) {
+                    return word << 6 | Long.numberOfTrailingZeros(bits);
+                }
+            }
+            return -1;
+        }
+
+        private boolean containsAll(long[] cell, long[] symbols) {
+            for (int word = 0; word < words; word++) {
+                if ((symbols[word] & ~cell[word]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private class DiagonalTask extends RecursiveAction {
+            private final int length;
+            private final int from;
+            private final int to;
+
+            DiagonalTask(int length, int from, int to) {
+                this.length = length;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > 1 && work(to - from, length) > WORDS_PER_TASK) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new DiagonalTask(length, from, middle), new DiagonalTask(length, middle, to));
+                    return;
+                }
+                fillCells(length, from, to, new long[words]);
+            }
+        }
+    }
+}
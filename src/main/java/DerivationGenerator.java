@@ -0,0 +1,268 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Random strings of a grammar by leftmost derivation on an explicit stack of symbols, which
+// appends every terminal as it comes up, so a string costs time linear in its derivation.
+//
+// Derivations can be bounded in the length of the string and in the depth of the tree,
+// where a production of only terminals has depth one. minLength[A][d] is the length of the
+// shortest string A derives in at most d levels, and a production is only picked when the
+// shortest strings of its symbols, added to what is already fixed, still fit into the
+// length bound at the depth that is left. The shortest production always fits once the
+// starting symbol does, so every derivation ends within both bounds. Among the productions
+// that fit, the choice is uniform. Without bounds every productive production can be picked
+// and a derivation may grow without end, as in the old generateString.
+//
+// A shortest string never needs a tree higher than the number of non-terminals, so from the
+// column after that on all columns are the same, and the table stops there. A DerivationGenerator is
+// immutable and can be shared between threads, the StringBuilder variant lets a caller
+// reuse one buffer for many strings.
+public class DerivationGenerator {
+
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    private static final int IMPOSSIBLE = Integer.MAX_VALUE;
+
+    private final GrammarIndex grammar;
+    private final int maxLength;
+    private final int maxDepth;
+    private final int columns;
+
+    // Shortest string of non-terminal A within d levels, and of the body of rule r within d - 1 levels below it
+    private final int[][] minLength;
+    private final int[][] ruleLength;
+
+    public DerivationGenerator(Grammar grammar) {
+        this(grammar, UNBOUNDED, UNBOUNDED);
+    }
+
+    public DerivationGenerator(Grammar grammar, int maxLength, int maxDepth) {
+        if (maxLength < 0 || maxDepth < 1) {
+            throw new IllegalArgumentException("The bounds must allow at least one level and no negative length.");
+        }
+        this.grammar = new GrammarIndex(grammar);
+        this.maxLength = maxLength;
+        this.maxDepth = maxDepth;
+
+        int nonTerminalCount = this.grammar.getNonTerminalCount();
+        int ruleCount = this.grammar.getRuleCount();
+        this.columns = Math.min(maxDepth, nonTerminalCount + 1);
+        minLength = new int[nonTerminalCount][columns + 1];
+        ruleLength = new int[ruleCount][columns + 1];
+        for (int[] row : minLength) {
+            row[0] = IMPOSSIBLE;
+        }
+        for (int[] row : ruleLength) {
+            row[0] = IMPOSSIBLE;
+        }
+
+        for (int depth = 1; depth <= columns; depth++) {
+            for (int symbol = 0; symbol < nonTerminalCount; symbol++) {
+                minLength[symbol][depth] = IMPOSSIBLE;
+            }
+            for (int rule = 0; rule < ruleCount; rule++) {
+                long length = 0;
+                for (int symbol : this.grammar.ruleBodies[rule]) {
+                    length += GrammarIndex.isTerminal(symbol) ? 1 : minLength[symbol][depth - 1];
+                }
+                ruleLength[rule][depth] = (int) Math.min(length, IMPOSSIBLE);
+                int head = this.grammar.ruleHeads[rule];
+                minLength[head][depth] = Math.min(minLength[head][depth], ruleLength[rule][depth]);
+            }
+        }
+
+        if (minLength[0][columns] > maxLength) {
+            throw new IllegalArgumentException("The grammar derives no string" + (maxLength == UNBOUNDED ? "" : " of at most " + maxLength + " chars")
+                    + (maxDepth == UNBOUNDED ? "" : " within " + maxDepth + " levels") + ".");
+        }
+    }
+
+    // Length of the shortest string the starting symbol derives within the bounds
+    public int getMinLength() {
+        return minLength[0][columns];
+    }
+
+    public String generate() {
+        return generate(ThreadLocalRandom.current());
+    }
+
+    public String generate(Random random) {
+        StringBuilder result = new StringBuilder();
+        derive(random::nextInt, result, null);
+        return result.toString();
+    }
+
+    public String generate(SplittableRandom random) {
+        StringBuilder result = new StringBuilder();
+        derive(random::nextInt, result, null);
+        return result.toString();
+    }
+
+    // Clears the builder and leaves the string in it
+    public void generate(SplittableRandom random, StringBuilder into) {
+        into.setLength(0);
+        derive(random::nextInt, into, null);
+    }
+
+    // The same count and seed give the same strings in the same order, sequential or parallel
+    public Stream<String> generate(long count, long seed) {
+        return StreamSupport.stream(new DerivationSpliterator(this, count, seed), false);
+    }
+
+    public void write(Path file, long count, long seed) throws IOException {
+        write(file, count, seed, ForkJoinPool.commonPool());
+    }
+
+    // One string per line, the lines of generate(count, seed). The pool fills a window of blocks
+    // at a time, which are then written in order, so memory does not grow with the count.
+    public void write(Path file, long count, long seed, ForkJoinPool pool) throws IOException {
+        DerivationSpliterator blocks = new DerivationSpliterator(this, count, seed);
+        int window = Math.max(4, pool.getParallelism() * 4);
+        List<DerivationSpliterator.Range> ranges = new ArrayList<>(window);
+        byte[][] chunks = new byte[window][];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (true) {
+                ranges.clear();
+                DerivationSpliterator.Range block;
+                while (ranges.size() < window && (block = blocks.takeBlock()) != null) {
+                    ranges.add(block);
+                }
+                if (ranges.isEmpty()) {
+                    break;
+                }
+
+                pool.invoke(new BlockTask(ranges, chunks, 0, ranges.size()));
+                for (int i = 0; i < ranges.size(); i++) {
+                    ByteBuffer buffer = ByteBuffer.wrap(chunks[i]);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    chunks[i] = null;
+                }
+            }
+        }
+    }
+
+    public ParseTree generateTree(Random random) {
+        List<ParseTree> root = new ArrayList<>(1);
+        derive(random::nextInt, new StringBuilder(), root);
+        return root.get(0);
+    }
+
+    // With a tree, every symbol on the stack has the children list of its parent on a second stack, and
+    // adds its node there when it is popped. The body is pushed in reverse, so children come in order.
+    private void derive(IntUnaryOperator random, StringBuilder into, List<ParseTree> tree) {
+        int[] symbols = new int[16];
+        int[] depths = new int[16];
+        List<List<ParseTree>> parents = tree == null ? null : new ArrayList<>();
+        int size = 0;
+
+        symbols[size] = 0;
+        depths[size++] = maxDepth;
+        if (tree != null) {
+            parents.add(tree);
+        }
+        // The length of the string if everything left on the stack became as short as it can
+        long committed = minLength[0][columns];
+        int[] allowed = new int[16];
+
+        while (size > 0) {
+            int symbol = symbols[--size];
+            int depth = depths[size];
+            List<ParseTree> siblings = tree == null ? null : parents.remove(size);
+
+            if (GrammarIndex.isTerminal(symbol)) {
+                into.append(GrammarIndex.terminalChar(symbol));
+                if (tree != null) {
+                    siblings.add(ParseTree.leaf(grammar.name(symbol)));
+                }
+                continue;
+            }
+
+            int column = Math.min(depth, columns);
+            int[] rules = grammar.rulesOf[symbol];
+            if (allowed.length < rules.length) {
+                allowed = new int[rules.length];
+            }
+            int count = 0;
+            for (int rule : rules) {
+                int length = ruleLength[rule][column];
+                if (length != IMPOSSIBLE && committed - minLength[symbol][column] + length <= maxLength) {
+                    allowed[count++] = rule;
+                }
+            }
+            if (count == 0) {
+                throw new IllegalStateException("No production of " + grammar.nonTerminals[symbol] + " fits the bounds.");
+            }
+            int rule = allowed[count == 1 ? 0 : random.applyAsInt(count)];
+            committed += ruleLength[rule][column] - minLength[symbol][column];
+
+            int[] body = grammar.ruleBodies[rule];
+            List<ParseTree> children = null;
+            if (tree != null) {
+                children = new ArrayList<>(body.length);
+                siblings.add(ParseTree.node(grammar.nonTerminals[symbol], children));
+            }
+            if (size + body.length > symbols.length) {
+                symbols = Arrays.copyOf(symbols, Math.max(symbols.length * 2, size + body.length));
+                depths = Arrays.copyOf(depths, symbols.length);
+            }
+            int below = depth == UNBOUNDED ? UNBOUNDED : depth - 1;
+            for (int i = body.length - 1; i >= 0; i--) {
+                symbols[size] = body[i];
+                depths[size++] = below;
+                if (tree != null) {
+                    parents.add(children);
+                }
+            }
+        }
+    }
+
+    private class BlockTask extends RecursiveAction {
+        private final List<DerivationSpliterator.Range> ranges;
+        private final byte[][] chunks;
+        private final int from;
+        private final int to;
+
+        BlockTask(List<DerivationSpliterator.Range> ranges, byte[][] chunks, int from, int to) {
+            this.ranges = ranges;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new BlockTask(ranges, chunks, from, middle), new BlockTask(ranges, chunks, middle, to));
+                return;
+            }
+
+            DerivationSpliterator.Range range = ranges.get(from);
+            StringBuilder lines = new StringBuilder();
+            StringBuilder line = new StringBuilder();
+            for (long i = range.from; i < range.to; i++) {
+                generate(range.random, line);
+                lines.append(line).append('\n');
+            }
+            chunks[from] = lines.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+// The strings of a generated corpus, as a spliterator over their indices. A range is halved at
+// block boundaries until it is one block, and it gives a split of its random to its first half
+// and keeps going with the rest for the second. Which ranges a parallel stream splits off only
+// decides who walks that tree, the tree itself depends on nothing but the count and the seed,
+// so every string comes out the same with any number of threads.
+class DerivationSpliterator implements Spliterator<String> {
+
+    static final int BLOCK = 256;
+
+    static class Range {
+        long from;
+        final long to;
+        final SplittableRandom random;
+
+        Range(long from, long to, SplittableRandom random) {
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        long size() {
+            return to - from;
+        }
+    }
+
+    private final DerivationGenerator generator;
+    private final Deque<Range> pending = new ArrayDeque<>();
+    private final StringBuilder buffer = new StringBuilder();
+    private long remaining;
+
+    DerivationSpliterator(DerivationGenerator generator, long count, long seed) {
+        this(generator, new Range(0, count, new SplittableRandom(seed)));
+        if (count < 0) {
+            throw new IllegalArgumentException("The number of strings cannot be negative.");
+        }
+    }
+
+    private DerivationSpliterator(DerivationGenerator generator, Range range) {
+        this.generator = generator;
+        this.remaining = range.size();
+        if (range.size() > 0) {
+            pending.push(range);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super String> action) {
+        Range block = firstBlock();
+        if (block == null) {
+            return false;
+        }
+        generator.generate(block.random, buffer);
+        if (++block.from == block.to) {
+            pending.pop();
+        }
+        remaining--;
+        action.accept(buffer.toString());
+        return true;
+    }
+
+    // Only a range nobody has started on can be split, which is the only kind a stream splits anyway
+    @Override
+    public Spliterator<String> trySplit() {
+        if (pending.size() != 1 || pending.peek().size() <= BLOCK) {
+            return null;
+        }
+        Range first = split(pending.peek());
+        remaining -= first.size();
+        return new DerivationSpliterator(generator, first);
+    }
+
+    @Override
+    public long estimateSize() {
+        return remaining;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+
+    // Removes the next whole block, for callers that generate blocks themselves
+    Range takeBlock() {
+        Range block = firstBlock();
+        if (block != null) {
+            pending.pop();
+            remaining -= block.size();
+        }
+        return block;
+    }
+
+    private Range firstBlock() {
+        Range range = pending.peek();
+        while (range != null && range.size() > BLOCK) {
+            Range first = split(range);
+            pending.push(first);
+            range = first;
+        }
+        return range;
+    }
+
+    private static Range split(Range range) {
+        long blocks = (range.size() + BLOCK - 1) / BLOCK;
+        long middle = range.from + blocks / 2 * BLOCK;
+        Range first = new Range(range.from, middle, range.random.split());
+        range.from = middle;
+        return first;
+    }
+}
@@ -0,0 +1,49 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+// Matching API shared by the deterministic backends: the heap table of CompiledAutomaton,
+// the off-heap OffHeapAutomaton and the lazy ProductAutomaton. States are ints, DEAD_STATE
+// stands for the implicit state without any way to acceptance. Characters are grouped
+// into symbol classes that behave alike, class 0 holds the characters outside the alphabet.
+public interface DeterministicAutomaton {
+
+    int DEAD_STATE = -1;
+
+    int getStartState();
+
+    int getStateCount();
+
+    int step(int state, char c);
+
+    int classOf(char c);
+
+    // Includes class 0
+    int getClassCount();
+
+    boolean isAccepting(int state);
+
+    // Bytes held by the tables of the automaton, state names excluded
+    long getMemoryBytes();
+
+    default boolean matches(CharSequence input) {
+        int state = getStartState();
+        for (int i = 0, length = input.length(); i < length; i++) {
+            state = step(state, input.charAt(i));
+            if (state == DEAD_STATE) {
+                return false;
+            }
+        }
+        return isAccepting(state);
+    }
+
+    // Splits the file into chunks matched in parallel, see ParallelFileMatcher
+    default boolean matches(Path file, Charset charset, ForkJoinPool pool) throws IOException {
+        return ParallelFileMatcher.matches(this, file, charset, pool);
+    }
+
+    default AutomatonMatcher matcher() {
+        return new DeterministicMatcher(this);
+    }
+}
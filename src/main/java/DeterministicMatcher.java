@@ -0,0 +1,54 @@
+import java.nio.CharBuffer;
+
+// Streaming matcher over any deterministic backend, it only keeps the current state.
+class DeterministicMatcher implements AutomatonMatcher {
+
+    private final DeterministicAutomaton automaton;
+    private int state;
+
+    DeterministicMatcher(DeterministicAutomaton automaton) {
+        this.automaton = automaton;
+        this.state = automaton.getStartState();
+    }
+
+    @Override
+    public void feed(char symbol) {
+        if (state != DeterministicAutomaton.DEAD_STATE) {
+            state = automaton.step(state, symbol);
+        }
+    }
+
+    @Override
+    public void feed(CharSequence input) {
+        int current = state;
+        for (int i = 0, length = input.length(); i < length && current != DeterministicAutomaton.DEAD_STATE; i++) {
+            current = automaton.step(current, input.charAt(i));
+        }
+        state = current;
+    }
+
+    @Override
+    public void feed(CharBuffer input) {
+        int current = state;
+        while (input.hasRemaining() && current != DeterministicAutomaton.DEAD_STATE) {
+            current = automaton.step(current, input.get());
+        }
+        input.position(input.limit());
+        state = current;
+    }
+
+    @Override
+    public boolean isAccepting() {
+        return automaton.isAccepting(state);
+    }
+
+    @Override
+    public boolean isDead() {
+        return state == DeterministicAutomaton.DEAD_STATE;
+    }
+
+    @Override
+    public void reset() {
+        state = automaton.getStartState();
+    }
+}
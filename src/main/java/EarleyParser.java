@@ -0,0 +1,532 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Earley's algorithm for any context-free grammar, on the productions as they are. An item
+// is two ints, a dotted rule and the position its rule was predicted at, and the item sets
+// of all positions lie back to back in one pair of int arrays that grows by doubling.
+// Dotted rules are numbered so that the dot moves forward by adding one.
+//
+// Nullable non-terminals are handled as by Aycock and Horspool: predicting a nullable
+// symbol also moves the dot over it right away, so completions of empty derivations never
+// have to go back into the set they were predicted in. Right recursion is kept linear by
+// the optimization of Leo: when a completion could only ever move one item whose dot then
+// reaches the end, and so on up a chain, only the item at the top of the chain is added.
+// The tops are remembered per set and symbol, and the chains are walked again only for the
+// positions the parse forest needs.
+//
+// The forest is built afterwards, top down from the start symbol over the whole input,
+// looking up in the sets which splits of every rule have items. An EarleyParser is
+// immutable and can be shared between threads, every parse has its own chart.
+public class EarleyParser {
+
+    // Next symbol of a dotted rule with the dot at the end
+    private static final int END = Integer.MIN_VALUE;
+    private static final int NONE = -1;
+
+    private final GrammarIndex grammar;
+    private final int nonTerminalCount;
+    private final boolean[] nullable;
+
+    // Rule r with the dot before its symbol t is the dotted rule ruleStart[r] + t
+    private final int[] ruleStart;
+    private final int[] dottedRule;
+    private final int[] nextSymbol;
+    private final int dottedCount;
+
+    public EarleyParser(Grammar grammar) {
+        this.grammar = new GrammarIndex(grammar);
+        this.nonTerminalCount = this.grammar.getNonTerminalCount();
+
+        int ruleCount = this.grammar.getRuleCount();
+        ruleStart = new int[ruleCount];
+        int count = 0;
+        for (int rule = 0; rule < ruleCount; rule++) {
+            ruleStart[rule] = count;
+            count += this.grammar.ruleBodies[rule].length + 1;
+        }
+        dottedCount = count;
+        dottedRule = new int[count];
+        nextSymbol = new int[count];
+        for (int rule = 0; rule < ruleCount; rule++) {
+            int[] body = this.grammar.ruleBodies[rule];
+            for (int dot = 0; dot <= body.length; dot++) {
+                dottedRule[ruleStart[rule] + dot] = rule;
+                nextSymbol[ruleStart[rule] + dot] = dot < body.length ? body[dot] : END;
+            }
+        }
+
+        nullable = new boolean[nonTerminalCount];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int rule = 0; rule < ruleCount; rule++) {
+                int head = this.grammar.ruleHeads[rule];
+                if (!nullable[head] && Arrays.stream(this.grammar.ruleBodies[rule]).allMatch(symbol -> symbol >= 0 && nullable[symbol])) {
+                    nullable[head] = true;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    public boolean recognize(CharSequence input) {
+        return new Chart(input).accepts();
+    }
+
+    // The forest of all parse trees, empty when the grammar does not derive the input
+    public Optional<ParseForest> parse(CharSequence input) {
+        Chart chart = new Chart(input);
+        if (!chart.accepts()) {
+            return Optional.empty();
+        }
+        return Optional.of(chart.new ForestBuilder().build());
+    }
+
+    // Number of items the chart of the input ends up with, the measure of how much work a parse does
+    int chartSize(CharSequence input) {
+        return new Chart(input).size;
+    }
+
+    public boolean isNullable(String nonTerminal) {
+        Integer id = grammar.ids.get(nonTerminal);
+        return id != null && nullable[id];
+    }
+
+    private int head(int dotted) {
+        return grammar.ruleHeads[dottedRule[dotted]];
+    }
+
+    private class Chart {
+        private final CharSequence input;
+        private final int n;
+
+        // Item i is (dotted[i], origin[i]), set j holds the items from setStart[j] until setStart[j + 1]
+        private int[] dotted = new int[1 << 10];
+        private int[] origin = new int[1 << 10];
+        private int size;
+        private final int[] setStart;
+        private int lastSet;
+
+        // Every item by set, dotted rule and origin, to keep the sets free of duplicates and to look items up
+        private final LongIntTable items = new LongIntTable();
+
+        // The items of set k with the dot before B, as a chain through waitingNext from waiting[(k, B)]
+        private final LongIntTable waiting = new LongIntTable();
+        private int[] waitingNext = new int[1 << 10];
+
+        // Completions (j, A, k) already done, and the non-terminals predicted in the current set
+        private final LongIntTable completed = new LongIntTable();
+        private final int[] predictedIn;
+
+        // Top of the Leo chain of (k, B) as an index into the top arrays, NONE if B has no chain in set k
+        private final LongIntTable leo = new LongIntTable();
+        private int[] topDotted = new int[16];
+        private int[] topOrigin = new int[16];
+        private int topCount;
+
+        // Completions (A, k) of set j that were cut short by a chain, at leoStart[j] until leoStart[j + 1]
+        private int[] leoSymbol = new int[16];
+        private int[] leoOrigin = new int[16];
+        private int leoCount;
+        private final int[] leoStart;
+
+        // Items moved over the current char, they start the next set
+        private int[] scannedDotted = new int[16];
+        private int[] scannedOrigin = new int[16];
+        private int scannedCount;
+
+        Chart(CharSequence input) {
+            this.input = input;
+            this.n = input.length();
+            this.setStart = new int[n + 2];
+            this.leoStart = new int[n + 2];
+            this.predictedIn = new int[nonTerminalCount];
+            Arrays.fill(predictedIn, -1);
+            run();
+        }
+
+        private void run() {
+            predict(0, 0);
+            for (int set = 0; ; set++) {
+                lastSet = set;
+                scannedCount = 0;
+                for (int item = setStart[set]; item < size; item++) {
+                    process(set, item);
+                }
+                setStart[set + 1] = size;
+                leoStart[set + 1] = leoCount;
+                if (set == n || scannedCount == 0) {
+                    return;
+                }
+                for (int i = 0; i < scannedCount; i++) {
+                    add(set + 1, scannedDotted[i], scannedOrigin[i]);
+                }
+            }
+        }
+
+        boolean accepts() {
+            return lastSet == n && completions(n).contains(0, 0);
+        }
+
+        private void process(int set, int item) {
+            int rule = dotted[item];
+            int start = origin[item];
+            int symbol = nextSymbol[rule];
+
+            if (symbol == END) {
+                if (start < set) {
+                    complete(set, head(rule), start);
+                }
+            } else if (symbol >= 0) {
+                predict(set, symbol);
+                if (nullable[symbol]) {
+                    add(set, rule + 1, start);
+                }
+            } else if (set < n && GrammarIndex.terminal(input.charAt(set)) == symbol) {
+                if (scannedCount == scannedDotted.length) {
+                    scannedDotted = Arrays.copyOf(scannedDotted, scannedCount * 2);
+                    scannedOrigin = Arrays.copyOf(scannedOrigin, scannedCount * 2);
+                }
+                scannedDotted[scannedCount] = rule + 1;
+                scannedOrigin[scannedCount++] = start;
+            }
+        }
+
+        private void predict(int set, int symbol) {
+            if (predictedIn[symbol] == set) {
+                return;
+            }
+            predictedIn[symbol] = set;
+            for (int rule : grammar.rulesOf[symbol]) {
+                add(set, ruleStart[rule], set);
+            }
+        }
+
+        private void complete(int set, int symbol, int start) {
+            if (!completed.putIfAbsent(((long) set * nonTerminalCount + symbol) * (n + 1) + start, 0)) {
+                return;
+            }
+
+            int top = top(start, symbol);
+            if (top != NONE) {
+                add(set, topDotted[top], topOrigin[top]);
+                if (leoCount == leoSymbol.length) {
+                    leoSymbol = Arrays.copyOf(leoSymbol, leoCount * 2);
+                    leoOrigin = Arrays.copyOf(leoOrigin, leoCount * 2);
+                }
+                leoSymbol[leoCount] = symbol;
+                leoOrigin[leoCount++] = start;
+                return;
+            }
+
+            for (int item = waiting.get(waitingKey(start, symbol)); item != LongIntTable.MISSING && item != NONE; item = waitingNext[item]) {
+                add(set, dotted[item] + 1, origin[item]);
+            }
+        }
+
+        // The top of the Leo chain of symbol in set k, which is finished. The chain goes up as long as the
+        // set has exactly one item waiting for the symbol and that item is then complete. It is walked until
+        // a link whose top is known, and every link on the way gets the top too.
+        private int top(int set, int symbol) {
+            int memo = leo.get(waitingKey(set, symbol));
+            if (memo != LongIntTable.MISSING) {
+                return memo;
+            }
+
+            List<long[]> links = new ArrayList<>();
+            int top = NONE;
+            while (true) {
+                long key = waitingKey(set, symbol);
+                int known = leo.get(key);
+                if (known != LongIntTable.MISSING) {
+                    top = known;
+                    break;
+                }
+                // A guard against going around a cycle of unit rules, overwritten below
+                leo.put(key, NONE);
+
+                int item = waiting.get(key);
+                if (item == LongIntTable.MISSING || waitingNext[item] != NONE || nextSymbol[dotted[item] + 1] != END) {
+                    break;
+                }
+                links.add(new long[]{key, item});
+                symbol = head(dotted[item]);
+                set = origin[item];
+            }
+
+            for (int i = links.size() - 1; i >= 0; i--) {
+                int item = (int) links.get(i)[1];
+                if (top == NONE) {
+                    if (topCount == topDotted.length) {
+                        topDotted = Arrays.copyOf(topDotted, topCount * 2);
+                        topOrigin = Arrays.copyOf(topOrigin, topCount * 2);
+                    }
+                    topDotted[topCount] = dotted[item] + 1;
+                    topOrigin[topCount] = origin[item];
+                    top = topCount++;
+                }
+                leo.put(links.get(i)[0], top);
+            }
+            return links.isEmpty() ? NONE : top;
+        }
+
+        private void add(int set, int rule, int start) {
+            if (!items.putIfAbsent(itemKey(set, rule, start), size)) {
+                return;
+            }
+            if (size == dotted.length) {
+                dotted = Arrays.copyOf(dotted, size * 2);
+                origin = Arrays.copyOf(origin, size * 2);
+                waitingNext = Arrays.copyOf(waitingNext, size * 2);
+            }
+            dotted[size] = rule;
+            origin[size] = start;
+            waitingNext[size] = NONE;
+
+            int symbol = nextSymbol[rule];
+            if (symbol >= 0) {
+                long key = waitingKey(set, symbol);
+                int first = waiting.get(key);
+                waitingNext[size] = first == LongIntTable.MISSING ? NONE : first;
+                waiting.put(key, size);
+            }
+            size++;
+        }
+
+        private long itemKey(int set, int rule, int start) {
+            return ((long) set * dottedCount + rule) * (n + 1) + start;
+        }
+
+        private long waitingKey(int set, int symbol) {
+            return (long) set * nonTerminalCount + symbol;
+        }
+
+        boolean hasItem(int set, int rule, int start) {
+            return items.get(itemKey(set, rule, start)) != LongIntTable.MISSING;
+        }
+
+        // Every non-terminal with the start of its derivations ending at the set, with the links of the
+        // Leo chains cut short in it put back. Only asked for the sets the forest reaches.
+        private final Map<Integer, Completions> completionsOf = new HashMap<>();
+
+        Completions completions(int set) {
+            Completions result = completionsOf.get(set);
+            if (result != null) {
+                return result;
+            }
+            result = new Completions();
+            for (int item = setStart[set]; item < setStart[set + 1]; item++) {
+                if (nextSymbol[dotted[item]] == END) {
+                    result.add(head(dotted[item]), origin[item]);
+                }
+            }
+            for (int i = leoStart[set]; i < leoStart[set + 1]; i++) {
+                int symbol = leoSymbol[i];
+                int start = leoOrigin[i];
+                int top = leo.get(waitingKey(start, symbol));
+                while (true) {
+                    int item = waiting.get(waitingKey(start, symbol));
+                    symbol = head(dotted[item]);
+                    start = origin[item];
+                    result.add(symbol, start);
+                    // The link whose item is the top ends the chain, even where unit rules close it into a cycle
+                    if (dotted[item] + 1 == topDotted[top] && start == topOrigin[top]) {
+                        break;
+                    }
+                }
+            }
+            completionsOf.put(set, result);
+            return result;
+        }
+
+        private class ForestBuilder {
+            private final Map<Long, ParseForest.Node> nodes = new HashMap<>();
+            private final List<ParseForest.Node> order = new ArrayList<>();
+            private final Deque<ParseForest.Node> pending = new ArrayDeque<>();
+            private final Deque<int[]> pendingKeys = new ArrayDeque<>();
+
+            // The items waiting for a non-terminal by dotted rule and origin, chained through sameNext over
+            // the sets that have them, and the length of every chain
+            private final LongIntTable firstOf = new LongIntTable();
+            private final LongIntTable countOf = new LongIntTable();
+            private final int[] sameNext = new int[size];
+            private final int[] setOf = new int[size];
+
+            ForestBuilder() {
+                for (int set = 0; set <= lastSet; set++) {
+                    for (int item = setStart[set]; item < setStart[set + 1]; item++) {
+                        if (nextSymbol[dotted[item]] < 0) {
+                            continue;
+                        }
+                        setOf[item] = set;
+                        long key = prefixKey(dotted[item], origin[item]);
+                        int first = firstOf.get(key);
+                        sameNext[item] = first == LongIntTable.MISSING ? NONE : first;
+                        firstOf.put(key, item);
+                        countOf.put(key, first == LongIntTable.MISSING ? 1 : countOf.get(key) + 1);
+                    }
+                }
+            }
+
+            private long prefixKey(int rule, int start) {
+                return (long) rule * (n + 1) + start;
+            }
+
+            ParseForest build() {
+                ParseForest.Node root = symbolNode(0, 0, n);
+                while (!pending.isEmpty()) {
+                    ParseForest.Node node = pending.pop();
+                    int[] key = pendingKeys.pop();
+                    if (node.getKind() == ParseForest.Kind.SYMBOL) {
+                        expandSymbol(node, key[0], key[1], key[2]);
+                    } else {
+                        expandPrefix(node, key[0], key[1], key[2], key[3]);
+                    }
+                }
+                return new ParseForest(root, order);
+            }
+
+            private void expandSymbol(ParseForest.Node node, int symbol, int start, int end) {
+                for (int rule : grammar.rulesOf[symbol]) {
+                    int[] body = grammar.ruleBodies[rule];
+                    if (body.length == 0) {
+                        if (start == end) {
+                            node.families.add(List.of());
+                        }
+                    } else if (body.length == 1) {
+                        if (derives(body[0], start, end)) {
+                            node.families.add(List.of(child(body[0], start, end)));
+                        }
+                    } else {
+                        addSplits(node, rule, body.length, start, end);
+                    }
+                }
+            }
+
+            private void expandPrefix(ParseForest.Node node, int rule, int length, int start, int end) {
+                addSplits(node, rule, length, start, end);
+            }
+
+            // The families of symbols 0 until length of the rule over (start, end): the first length - 1 of
+            // them up to a split, and the last one from there. The splits come from the sets that have the
+            // item of the prefix or from the completions of the last symbol, whichever are fewer.
+            private void addSplits(ParseForest.Node node, int rule, int length, int start, int end) {
+                int last = grammar.ruleBodies[rule][length - 1];
+                int prefix = ruleStart[rule] + length - 1;
+
+                if (GrammarIndex.isTerminal(last)) {
+                    int split = end - 1;
+                    if (split >= start && GrammarIndex.terminal(input.charAt(split)) == last && hasItem(split, prefix, start)) {
+                        node.families.add(List.of(prefix(rule, length - 1, start, split), child(last, split, end)));
+                    }
+                    return;
+                }
+
+                Completions completions = completions(end);
+                List<Integer> origins = completions.originsOf(last);
+                long key = prefixKey(prefix, start);
+                int count = countOf.get(key);
+                if (count == LongIntTable.MISSING) {
+                    return;
+                }
+                if (count < origins.size()) {
+                    for (int item = firstOf.get(key); item != NONE; item = sameNext[item]) {
+                        int split = setOf[item];
+                        if (split <= end && completions.contains(last, split)) {
+                            node.families.add(List.of(prefix(rule, length - 1, start, split), child(last, split, end)));
+                        }
+                    }
+                } else {
+                    for (int split : origins) {
+                        if (split >= start && hasItem(split, prefix, start)) {
+                            node.families.add(List.of(prefix(rule, length - 1, start, split), child(last, split, end)));
+                        }
+                    }
+                }
+            }
+
+            private boolean derives(int symbol, int start, int end) {
+                if (GrammarIndex.isTerminal(symbol)) {
+                    return end == start + 1 && GrammarIndex.terminal(input.charAt(start)) == symbol;
+                }
+                return completions(end).contains(symbol, start);
+            }
+
+            private ParseForest.Node child(int symbol, int start, int end) {
+                if (GrammarIndex.isTerminal(symbol)) {
+                    return node(nonTerminalCount + dottedCount, start, end, grammar.name(symbol), ParseForest.Kind.TERMINAL, null);
+                }
+                return symbolNode(symbol, start, end);
+            }
+
+            private ParseForest.Node symbolNode(int symbol, int start, int end) {
+                return node(symbol, start, end, grammar.nonTerminals[symbol], ParseForest.Kind.SYMBOL, new int[]{symbol, start, end});
+            }
+
+            // The first length symbols of the rule, a node of their own once there are two of them
+            private ParseForest.Node prefix(int rule, int length, int start, int end) {
+                if (length == 1) {
+                    return child(grammar.ruleBodies[rule][0], start, end);
+                }
+                int dot = ruleStart[rule] + length;
+                return node(nonTerminalCount + dot, start, end, label(rule, length), ParseForest.Kind.INTERMEDIATE,
+                        new int[]{rule, length, start, end});
+            }
+
+            private ParseForest.Node node(int label, int start, int end, String name, ParseForest.Kind kind, int[] key) {
+                long id = ((long) label * (n + 1) + start) * (n + 1) + end;
+                ParseForest.Node node = nodes.get(id);
+                if (node == null) {
+                    node = new ParseForest.Node(order.size(), name, kind, start, end);
+                    nodes.put(id, node);
+                    order.add(node);
+                    if (key != null) {
+                        pending.push(node);
+                        pendingKeys.push(key);
+                    }
+                }
+                return node;
+            }
+
+            private String label(int rule, int dot) {
+                StringBuilder result = new StringBuilder(grammar.nonTerminals[grammar.ruleHeads[rule]]).append(" -> ");
+                int[] body = grammar.ruleBodies[rule];
+                for (int i = 0; i < body.length; i++) {
+                    if (i == dot) {
+                        result.append('\u2022');
+                    }
+                    result.append(grammar.name(body[i]));
+                }
+                return result.toString();
+            }
+        }
+    }
+
+    // The starts of the completed derivations of every non-terminal that end at one set
+    private static class Completions {
+        private final Set<Long> pairs = new HashSet<>();
+        private final Map<Integer, List<Integer>> originsBySymbol = new HashMap<>();
+
+        void add(int symbol, int origin) {
+            if (pairs.add((long) symbol << 32 | origin)) {
+                originsBySymbol.computeIfAbsent(symbol, key -> new ArrayList<>()).add(origin);
+            }
+        }
+
+        boolean contains(int symbol, int origin) {
+            return pairs.contains((long) symbol << 32 | origin);
+        }
+
+        List<Integer> originsOf(int symbol) {
+            return originsBySymbol.getOrDefault(symbol, List.of());
+        }
+    }
+}
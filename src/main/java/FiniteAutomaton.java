@@ -1,58 +1,198 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
 
 public class FiniteAutomaton {
 
+    // Transitions on the empty symbol are epsilon moves
+    public static final String EPSILON = "";
+
     private final Set<String> states;
     private final Set<String> alphabet;
     private final Map<String, Map<String, Set<String>>> transitions;
     private final String startState;
     private final Set<String> acceptStates;
 
+    private volatile CompiledAutomaton compiled;
+    private volatile BitParallelNfa bitParallelNfa;
+
+    // The automaton keeps its own unmodifiable copies, so the compiled forms it caches can never
+    // disagree with what the getters show
     public FiniteAutomaton(Set<String> states, Set<String> alphabet, Map<String, Map<String, Set<String>>> transitions, String startState, Set<String> acceptStates) {
-        this.states = new HashSet<>(states);
-        this.alphabet = new HashSet<>(alphabet);
-        this.transitions = new HashMap<>(transitions);
+        this.states = Collections.unmodifiableSet(new HashSet<>(states));
+        this.alphabet = Collections.unmodifiableSet(new HashSet<>(alphabet));
+        this.transitions = copyTransitions(transitions);
         this.startState = startState;
-        this.acceptStates = new HashSet<>(acceptStates);
+        this.acceptStates = Collections.unmodifiableSet(new HashSet<>(acceptStates));
+    }
+
+    private static Map<String, Map<String, Set<String>>> copyTransitions(Map<String, Map<String, Set<String>>> transitions) {
+        Map<String, Map<String, Set<String>>> copy = new HashMap<>();
+        for (Map.Entry<String, Map<String, Set<String>>> entry : transitions.entrySet()) {
+            Map<String, Set<String>> moves = new HashMap<>();
+            entry.getValue().forEach((symbol, targets) -> moves.put(symbol, Collections.unmodifiableSet(new HashSet<>(targets))));
+            copy.put(entry.getKey(), Collections.unmodifiableMap(moves));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public static FiniteAutomaton fromRegex(String pattern) {
+        return RegexCompiler.compile(pattern);
     }
 
     public boolean stringBelongsToLanguage(String input) {
-        Set<String> currentStates = new HashSet<>();
-        currentStates.add(startState);
+        CompiledAutomaton table = compiled;
+        if (table != null) {
+            return table.matches(input);
+        }
 
-        for (char symbol : input.toCharArray()) {
-            String symbolStr = String.valueOf(symbol);
+        BitParallelNfa simulation = bitParallelNfa;
+        if (simulation != null) {
+            return simulation.matches(input);
+        }
 
-            if (!alphabet.contains(symbolStr)) {
-                // Invalid symbol
-                return false;
-            }
+        return isDeterministic() ? compile().matches(input) : toBitParallelNfa().matches(input);
+    }
 
-            Set<String> nextStates = new HashSet<>();
+    public boolean streamBelongsToLanguage(Reader reader) throws IOException {
+        return matcher().matches(reader);
+    }
 
-            for (String currentState : currentStates) {
-                if (transitions.containsKey(currentState) && transitions.get(currentState).containsKey(symbolStr)) {
-                    nextStates.addAll(transitions.get(currentState).get(symbolStr));
-                }
-            }
+    public boolean streamBelongsToLanguage(ReadableByteChannel channel, Charset charset) throws IOException {
+        return matcher().matches(channel, charset);
+    }
 
-            if (nextStates.isEmpty()) {
-                // No transition for the current symbol and current states
-                return false;
-            }
+    public boolean fileBelongsToLanguage(Path file) throws IOException {
+        return fileBelongsToLanguage(file, StandardCharsets.UTF_8, ForkJoinPool.commonPool());
+    }
 
-            currentStates = nextStates;
+    public boolean fileBelongsToLanguage(Path file, Charset charset, ForkJoinPool pool) throws IOException {
+        return compile().matches(file, charset, pool);
+    }
+
+    public BitSet matchAll(List<? extends CharSequence> inputs) {
+        return matchAll(inputs, ForkJoinPool.commonPool());
+    }
+
+    public BitSet matchAll(List<? extends CharSequence> inputs, ForkJoinPool pool) {
+        if (!(inputs instanceof RandomAccess)) {
+            inputs = new ArrayList<>(inputs);
         }
 
-        // Check if any of the current states is an accept state
-        for (String currentState : currentStates) {
-            if (acceptStates.contains(currentState)) {
-                return true;
-            }
+        // Resolve the shared tables once, the workers only create their own matcher state
+        Supplier<AutomatonMatcher> matchers = isDeterministic() ? compile()::matcher : toBitParallelNfa()::matcher;
+
+        long[] resultWords = new long[(inputs.size() + 63) >>> 6];
+        int leafSize = BatchMatchTask.leafSize(inputs.size(), pool.getParallelism());
+        pool.invoke(new BatchMatchTask(inputs, matchers, resultWords, 0, inputs.size(), leafSize));
+
+        return BitSet.valueOf(resultWords);
+    }
+
+    public AutomatonMatcher matcher() {
+        return isDeterministic() ? compile().matcher() : toBitParallelNfa().matcher();
+    }
+
+    public LazyDfa toLazyDeterministic() {
+        return toLazyDeterministic(LazyDfa.DEFAULT_CACHE_BYTES);
+    }
+
+    public LazyDfa toLazyDeterministic(long maxCacheBytes) {
+        return new LazyDfa(toBitParallelNfa(), maxCacheBytes);
+    }
+
+    public CompiledAutomaton compile() {
+        CompiledAutomaton result = compiled;
+
+        if (result == null) {
+            result = buildTable(null);
+            compiled = result;
+        }
+
+        return result;
+    }
+
+    public CompiledAutomaton compile(ForkJoinPool pool) {
+        CompiledAutomaton result = compiled;
+
+        if (result == null) {
+            result = buildTable(pool);
+            compiled = result;
+        }
+
+        return result;
+    }
+
+    // Without a pool the subset construction runs on the calling thread
+    private CompiledAutomaton buildTable(ForkJoinPool pool) {
+        AutomatonIndex index = new AutomatonIndex(this);
+        if (isDeterministic()) {
+            return CompiledAutomaton.fromDeterministic(index);
         }
+        SubsetConstruction subsets = new SubsetConstruction(NfaReducer.reduce(index));
+        return pool == null ? subsets.determinize() : subsets.determinize(pool);
+    }
+
+    // Lazy boolean operations, product states are only built as they are reached
+    public ProductAutomaton intersect(FiniteAutomaton other) {
+        return ProductAutomaton.intersection(compile(), other.compile());
+    }
+
+    public ProductAutomaton union(FiniteAutomaton other) {
+        return ProductAutomaton.union(compile(), other.compile());
+    }
+
+    public ProductAutomaton difference(FiniteAutomaton other) {
+        return ProductAutomaton.difference(compile(), other.compile());
+    }
+
+    public ProductAutomaton complement() {
+        return ProductAutomaton.complement(compile());
+    }
+
+    public ComparisonResult equivalentTo(FiniteAutomaton other) {
+        return LanguageComparison.equivalent(compile(), other.compile());
+    }
 
-        return false;
+    // Works on the NFAs directly, neither automaton is determinized up front
+    public ComparisonResult includedIn(FiniteAutomaton other) {
+        return LanguageComparison.included(new AutomatonIndex(this), other.toBitParallelNfa());
+    }
+
+    public LanguageCounter counter() {
+        return new LanguageCounter(compile());
+    }
+
+    public MatchScanner scanner() {
+        return new MatchScanner(this);
+    }
+
+    // The heap table is only an intermediate here and is not cached, so it can be collected
+    public OffHeapAutomaton compileOffHeap() {
+        CompiledAutomaton result = compiled;
+
+        if (result == null) {
+            result = buildTable(null);
+        }
+
+        return result.toOffHeap();
+    }
+
+    public BitParallelNfa toBitParallelNfa() {
+        BitParallelNfa result = bitParallelNfa;
+
+        if (result == null) {
+            result = new BitParallelNfa(new AutomatonIndex(this));
+            bitParallelNfa = result;
+        }
+
+        return result;
     }
 
     public String mapStateToSymbol(String state) {
@@ -126,7 +266,7 @@ public class FiniteAutomaton {
             for (String symbol : stateTransitions.keySet()) {
                 Set<String> nextStates = stateTransitions.get(symbol);
 
-                if (nextStates.size() > 1) {
+                if (nextStates.size() > 1 || (symbol.equals(EPSILON) && !nextStates.isEmpty())) {
                     return false;
                 }
             }
@@ -140,46 +280,55 @@ public class FiniteAutomaton {
             return this;
         }
 
-        Set<String> newStates = new HashSet<>();
-        Map<String, Map<String, Set<String>>> newTransitions = new HashMap<>();
-        Set<String> newAcceptStates = new HashSet<>();
+        requireSingleCharSymbols();
+        return compile().toFiniteAutomaton();
+    }
 
-        Queue<Set<String>> stateQueue = new LinkedBlockingQueue<>();
-        stateQueue.add(Set.of(startState));
+    public FiniteAutomaton convertToDeterministic(ForkJoinPool pool) {
+        if (isDeterministic()) {
+            return this;
+        }
 
-        while (!stateQueue.isEmpty()) {
-            Set<String> currentState = stateQueue.poll();
-            String stateName = String.join("", currentState);
+        requireSingleCharSymbols();
+        return compile(pool).toFiniteAutomaton();
+    }
 
-            if (newStates.contains(stateName)) {
-                continue;
-            }
+    // Epsilon-free NFA for the same language with useless states trimmed and bisimilar states merged
+    public FiniteAutomaton reduce() {
+        requireSingleCharSymbols();
+        return NfaReducer.reduce(new AutomatonIndex(this)).toFiniteAutomaton();
+    }
 
-            newStates.add(stateName);
+    public FiniteAutomaton minimize() {
+        requireSingleCharSymbols();
+        return compile().minimize().toFiniteAutomaton();
+    }
 
-            for (String state : currentState) {
-                if (acceptStates.contains(state)) {
-                    newAcceptStates.add(stateName);
-                    break;
-                }
+    // The compiled tables only know single chars, so an automaton built from them would lose
+    // every longer symbol and accept a different language
+    private void requireSingleCharSymbols() {
+        for (String symbol : alphabet) {
+            if (symbol.length() > 1) {
+                throw new IllegalArgumentException("Cannot convert an automaton with the multi-character symbol \"" + symbol + "\".");
             }
-
-            Map<String, Set<String>> currentStateTransitions = new HashMap<>();
-
-            for (String symbol : alphabet) {
-               for (String state : currentState) {
-                   if (transitions.containsKey(state) && transitions.get(state).containsKey(symbol)) {
-                       Set<String> nextStates = transitions.get(state).get(symbol);
-                       currentStateTransitions.put(symbol, Set.of(String.join("", nextStates)));
-                       stateQueue.add(nextStates);
-                   }
-               }
+        }
+        for (Map<String, Set<String>> stateTransitions : transitions.values()) {
+            for (String symbol : stateTransitions.keySet()) {
+                if (symbol.length() > 1) {
+                    throw new IllegalArgumentException("Cannot convert an automaton with the multi-character symbol \"" + symbol + "\".");
+                }
             }
-
-            newTransitions.put(stateName, currentStateTransitions);
         }
+    }
+
+    // Writes DOT, SVG or PNG depending on the file extension, works without a display
+    public void export(Path file) throws IOException {
+        AutomatonExporter.export(this, file);
+    }
 
-        return new FiniteAutomaton(newStates, alphabet, newTransitions, startState, newAcceptStates);
+    // Computed once per automaton and shared with the visualizer and the exporters
+    public AutomatonLayout layout() {
+        return AutomatonLayout.of(this);
     }
 
     public void visualize(String title) {
@@ -1,5 +1,7 @@
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
 
 public class Grammar {
 
@@ -11,6 +13,9 @@ public class Grammar {
     private Set<String> variables;
     private int variablesCounter;
 
+    // Built on first use and dropped whenever the productions are rewritten
+    private volatile DerivationGenerator generator;
+
     public Grammar(String startingSymbol, Map<String, List<String>> productions) {
         setupGrammar(startingSymbol, productions);
     }
@@ -41,27 +46,33 @@ public class Grammar {
         determineTerminalsAndNonTerminals();
     }
 
+    // Unbounded, so a grammar whose derivations tend to grow may take arbitrarily long
     public String generateString() {
-        String result = getRandomProduction(startingSymbol);
+        return unboundedGenerator().generate();
+    }
 
-        boolean containsNonTerminal = true;
+    // Reproducible for a seed however the stream is split, see DerivationSpliterator
+    public Stream<String> generate(long count, long seed) {
+        return unboundedGenerator().generate(count, seed);
+    }
 
-        while (containsNonTerminal) {
-            containsNonTerminal = false;
-            for (char entry : result.toCharArray()) {
-                String entryString = String.valueOf(entry);
-                if (nonTerminalSymbols.contains(entryString)) {
-                    result = result.replaceFirst(entryString, getRandomProduction(entryString));
-                    containsNonTerminal = true;
-                }
-            }
+    public void generate(long count, long seed, Path file) throws IOException {
+        unboundedGenerator().write(file, count, seed);
+    }
+
+    private DerivationGenerator unboundedGenerator() {
+        DerivationGenerator result = generator;
+
+        if (result == null) {
+            result = new DerivationGenerator(this);
+            generator = result;
         }
 
         return result;
     }
 
-    private String getRandomProduction(String nonTerminal) {
-        return productions.get(nonTerminal).get(ThreadLocalRandom.current().nextInt(productions.get(nonTerminal).size()));
+    public DerivationGenerator generator(int maxLength, int maxDepth) {
+        return new DerivationGenerator(this, maxLength, maxDepth);
     }
 
     public FiniteAutomaton toFiniteAutomaton() {
@@ -206,6 +217,9 @@ public class Grammar {
 
     public void eliminateEpsilonProductions() {
         Set<String> epsilonSymbols = findSymbolsWithEpsilonProductions();
+        if(epsilonSymbols.isEmpty()) {
+            return;
+        }
 
         Map<String, List<String>> newProductions = new HashMap<>();
 
@@ -360,6 +374,16 @@ public class Grammar {
         return productiveSymbols;
     }
 
+    // Parses with the productions as they are now, so normalizeToChomskyForm has to come first
+    public CykParser cykParser() {
+        return new CykParser(this);
+    }
+
+    // Parses with the productions as they are, in any form
+    public EarleyParser earleyParser() {
+        return new EarleyParser(this);
+    }
+
     public void normalizeToChomskyForm() {
         eliminateEpsilonProductions();
         eliminateRenamingProductions();
@@ -446,14 +470,17 @@ public class Grammar {
             List<String> toStates = entry.getValue();
             List<String> newToStates = new ArrayList<>();
             for (String production : toStates) {
-                if (calculateProductionLength(production) == 2 && Character.isLowerCase(production.charAt(0)) && Character.isUpperCase(production.charAt(1))) {
-                    String terminal = production.substring(0, 1);
+                boolean terminalFirst = Character.isLowerCase(production.charAt(0));
+                boolean terminalLast = Character.isLowerCase(production.charAt(production.length() - 1));
+                if (calculateProductionLength(production) == 2 && terminalFirst != terminalLast) {
+                    // Handle one terminal next to a non-terminal, on either side
+                    String terminal = terminalFirst ? production.substring(0, 1) : production.substring(production.length() - 1);
                     String nonTerminal = terminalNonTerminals.getOrDefault(terminal, null);
                     if (nonTerminal == null) {
                         nonTerminal = generateNewVariable(newNonTerminals, variablesCounter++, terminal);
                         terminalNonTerminals.put(terminal, nonTerminal);
                     }
-                    newToStates.add(nonTerminal + production.charAt(1));
+                    newToStates.add(terminalFirst ? nonTerminal + production.substring(1) : production.substring(0, production.length() - 1) + nonTerminal);
                 } else {
                     newToStates.add(production);
                 }
@@ -536,7 +563,9 @@ public class Grammar {
         return newNonTerminal;
     }
 
+    // Every step that rewrites the productions ends here, so this is where the cached generator goes stale
     private void determineTerminalsAndNonTerminals() {
+        generator = null;
         determineNonTerminals();
         determineTerminals();
     }
@@ -0,0 +1,121 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// The symbols of a grammar as ints and its productions as arrays of them, for the parsers.
+// Non-terminals get ids from 0 with the starting symbol first and the others in name order.
+// Terminals are stored as -1 - c, so the sign tells the two kinds apart and any char fits.
+//
+// A production is split into symbols the way normalizeToChomskyForm writes them: an
+// uppercase letter together with the digits and primes after it is one non-terminal
+// (A, X12, S'), every other char is a terminal.
+class GrammarIndex {
+
+    final String[] nonTerminals;
+    final Map<String, Integer> ids = new HashMap<>();
+
+    // Rule r is ruleHeads[r] -> ruleBodies[r], the rules of non-terminal n are rulesOf[n]
+    final int[] ruleHeads;
+    final int[][] ruleBodies;
+    final int[][] rulesOf;
+
+    GrammarIndex(Grammar grammar) {
+        Map<String, List<String>> productions = grammar.getProductions();
+
+        TreeSet<String> names = new TreeSet<>(productions.keySet());
+        for (List<String> bodies : productions.values()) {
+            for (String body : bodies) {
+                for (String symbol : split(body)) {
+                    if (isNonTerminal(symbol)) {
+                        names.add(symbol);
+                    }
+                }
+            }
+        }
+        names.remove(grammar.getStartingSymbol());
+
+        nonTerminals = new String[names.size() + 1];
+        nonTerminals[0] = grammar.getStartingSymbol();
+        ids.put(nonTerminals[0], 0);
+        int nextId = 1;
+        for (String name : names) {
+            nonTerminals[nextId] = name;
+            ids.put(name, nextId++);
+        }
+
+        List<Integer> heads = new ArrayList<>();
+        List<int[]> bodies = new ArrayList<>();
+        int[] ruleCounts = new int[nonTerminals.length];
+        for (int head = 0; head < nonTerminals.length; head++) {
+            for (String body : productions.getOrDefault(nonTerminals[head], List.of())) {
+                List<String> symbols = split(body);
+                int[] encoded = new int[symbols.size()];
+                for (int i = 0; i < encoded.length; i++) {
+                    String symbol = symbols.get(i);
+                    encoded[i] = isNonTerminal(symbol) ? ids.get(symbol) : terminal(symbol.charAt(0));
+                }
+                heads.add(head);
+                bodies.add(encoded);
+                ruleCounts[head]++;
+            }
+        }
+
+        ruleHeads = heads.stream().mapToInt(Integer::intValue).toArray();
+        ruleBodies = bodies.toArray(new int[0][]);
+        rulesOf = new int[nonTerminals.length][];
+        for (int head = 0; head < nonTerminals.length; head++) {
+            rulesOf[head] = new int[ruleCounts[head]];
+        }
+        Arrays.fill(ruleCounts, 0);
+        for (int rule = 0; rule < ruleHeads.length; rule++) {
+            rulesOf[ruleHeads[rule]][ruleCounts[ruleHeads[rule]]++] = rule;
+        }
+    }
+
+    int getNonTerminalCount() {
+        return nonTerminals.length;
+    }
+
+    int getRuleCount() {
+        return ruleHeads.length;
+    }
+
+    String name(int symbol) {
+        return isTerminal(symbol) ? String.valueOf(terminalChar(symbol)) : nonTerminals[symbol];
+    }
+
+    static int terminal(char c) {
+        return -1 - c;
+    }
+
+    static boolean isTerminal(int symbol) {
+        return symbol < 0;
+    }
+
+    static char terminalChar(int symbol) {
+        return (char) (-1 - symbol);
+    }
+
+    static List<String> split(String production) {
+        List<String> symbols = new ArrayList<>();
+        int i = 0;
+        while (i < production.length()) {
+            int end = i + 1;
+            if (Character.isUpperCase(production.charAt(i))) {
+                while (end < production.length() && (Character.isDigit(production.charAt(end)) || production.charAt(end) == '\'')) {
+                    end++;
+                }
+            }
+            symbols.add(production.substring(i, end));
+            i = end;
+        }
+        return symbols;
+    }
+
+    private static boolean isNonTerminal(String symbol) {
+        return Character.isUpperCase(symbol.charAt(0));
+    }
+}
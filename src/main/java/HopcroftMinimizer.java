@@ -0,0 +1,304 @@
+import java.util.Arrays;
+
+// Hopcroft-style DFA minimization following Valmari and Lehtinen's refinable-partition
+// formulation, which runs in O(m log n) and works directly on partial DFAs. Unreachable
+// states and states that cannot reach acceptance are trimmed before refinement.
+class HopcroftMinimizer {
+
+    private final int stateCount;
+    private final int symbolCount;
+    private int transitionCount;
+
+    // Transition arrays: tail, label and head of every transition
+    private int[] tails;
+    private int[] labels;
+    private int[] heads;
+
+    // Adjacency of every state in the transition arrays
+    private final int[] adjacency;
+    private final int[] offsets;
+
+    private final Partition blocks;
+    private Partition cords;
+
+    // Work arrays shared by both partitions
+    private final int[] marked;
+    private final int[] touched;
+    private int touchedCount;
+
+    private int reachedCount;
+    private int keptCount;
+
+    private HopcroftMinimizer(CompiledAutomaton automaton) {
+        stateCount = automaton.getStateCount();
+        symbolCount = automaton.getClassCount();
+
+        int count = 0;
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                if (automaton.target(state, symbol) != CompiledAutomaton.DEAD_STATE) {
+                    count++;
+                }
+            }
+        }
+
+        transitionCount = count;
+        tails = new int[count];
+        labels = new int[count];
+        heads = new int[count];
+        count = 0;
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int target = automaton.target(state, symbol);
+                if (target != CompiledAutomaton.DEAD_STATE) {
+                    tails[count] = state;
+                    labels[count] = symbol;
+                    heads[count++] = target;
+                }
+            }
+        }
+
+        adjacency = new int[count];
+        offsets = new int[stateCount + 1];
+        blocks = new Partition(stateCount);
+        marked = new int[Math.max(stateCount, count) + 1];
+        touched = new int[Math.max(stateCount, count) + 1];
+    }
+
+    static CompiledAutomaton minimize(CompiledAutomaton automaton) {
+        return new HopcroftMinimizer(automaton).run(automaton);
+    }
+
+    private CompiledAutomaton run(CompiledAutomaton automaton) {
+        int start = automaton.getStartState();
+
+        // Forward trim
+        reach(start);
+        removeUnreachable(tails, heads);
+
+        // Backward trim, accepting states end up in front of the block
+        for (int state = 0; state < stateCount; state++) {
+            if (automaton.isAccepting(state) && blocks.location[state] < blocks.end[0]) {
+                reach(state);
+            }
+        }
+        int acceptingCount = reachedCount;
+        removeUnreachable(heads, tails);
+        keptCount = blocks.end[0];
+
+        if (blocks.location[start] >= keptCount) {
+            // Nothing is accepted, the minimal automaton is a single rejecting state
+            return automaton.rebuild(new int[]{start}, new int[0], new int[0], new int[0], new boolean[1], 0);
+        }
+
+        // Initial partition: accepting and rejecting states
+        if (acceptingCount > 0) {
+            marked[0] = acceptingCount;
+            touched[touchedCount++] = 0;
+            blocks.split();
+        }
+
+        // Transitions are grouped into cords by label
+        cords = new Partition(transitionCount);
+        if (transitionCount > 0) {
+            // Counting sort of the transitions by label
+            int[] labelStarts = new int[symbolCount + 1];
+            for (int t = 0; t < transitionCount; t++) {
+                labelStarts[labels[t] + 1]++;
+            }
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                labelStarts[symbol + 1] += labelStarts[symbol];
+            }
+            for (int t = 0; t < transitionCount; t++) {
+                cords.elements[labelStarts[labels[t]]++] = t;
+            }
+
+            cords.setCount = 0;
+            marked[0] = 0;
+            int label = labels[cords.elements[0]];
+            for (int i = 0; i < transitionCount; i++) {
+                int t = cords.elements[i];
+                if (labels[t] != label) {
+                    label = labels[t];
+                    cords.end[cords.setCount++] = i;
+                    cords.first[cords.setCount] = i;
+                    marked[cords.setCount] = 0;
+                }
+                cords.setOf[t] = cords.setCount;
+                cords.location[t] = i;
+            }
+            cords.end[cords.setCount++] = transitionCount;
+        }
+
+        // Split blocks by cords and cords by blocks until both are stable
+        makeAdjacent(heads);
+        int block = 1;
+        int cord = 0;
+        while (cord < cords.setCount) {
+            for (int i = cords.first[cord]; i < cords.end[cord]; i++) {
+                blocks.mark(tails[cords.elements[i]]);
+            }
+            blocks.split();
+            cord++;
+
+            while (block < blocks.setCount) {
+                for (int i = blocks.first[block]; i < blocks.end[block]; i++) {
+                    int state = blocks.elements[i];
+                    for (int j = offsets[state]; j < offsets[state + 1]; j++) {
+                        cords.mark(adjacency[j]);
+                    }
+                }
+                cords.split();
+                block++;
+            }
+        }
+
+        return buildResult(automaton, acceptingCount);
+    }
+
+    private CompiledAutomaton buildResult(CompiledAutomaton automaton, int acceptingCount) {
+        int blockCount = blocks.setCount;
+
+        // Every block is represented by its lowest original state id
+        int[] representatives = new int[blockCount];
+        Arrays.fill(representatives, Integer.MAX_VALUE);
+        for (int i = 0; i < keptCount; i++) {
+            int state = blocks.elements[i];
+            int block = blocks.setOf[state];
+            representatives[block] = Math.min(representatives[block], state);
+        }
+
+        boolean[] accepting = new boolean[blockCount];
+        for (int block = 0; block < blockCount; block++) {
+            accepting[block] = blocks.first[block] < acceptingCount;
+        }
+
+        int[] resultTails = new int[transitionCount];
+        int[] resultLabels = new int[transitionCount];
+        int[] resultHeads = new int[transitionCount];
+        int count = 0;
+        for (int t = 0; t < transitionCount; t++) {
+            int tail = tails[t];
+            if (representatives[blocks.setOf[tail]] == tail) {
+                resultTails[count] = blocks.setOf[tail];
+                resultLabels[count] = labels[t];
+                resultHeads[count++] = blocks.setOf[heads[t]];
+            }
+        }
+
+        return automaton.rebuild(representatives, Arrays.copyOf(resultTails, count), Arrays.copyOf(resultLabels, count),
+                Arrays.copyOf(resultHeads, count), accepting, blocks.setOf[automaton.getStartState()]);
+    }
+
+    private void reach(int state) {
+        int i = blocks.location[state];
+        if (i >= reachedCount) {
+            blocks.elements[i] = blocks.elements[reachedCount];
+            blocks.location[blocks.elements[i]] = i;
+            blocks.elements[reachedCount] = state;
+            blocks.location[state] = reachedCount++;
+        }
+    }
+
+    private void removeUnreachable(int[] from, int[] to) {
+        makeAdjacent(from);
+        for (int i = 0; i < reachedCount; i++) {
+            int state = blocks.elements[i];
+            for (int j = offsets[state]; j < offsets[state + 1]; j++) {
+                reach(to[adjacency[j]]);
+            }
+        }
+
+        int kept = 0;
+        for (int t = 0; t < transitionCount; t++) {
+            if (blocks.location[from[t]] < reachedCount && blocks.location[to[t]] < reachedCount) {
+                tails[kept] = tails[t];
+                labels[kept] = labels[t];
+                heads[kept] = heads[t];
+                kept++;
+            }
+        }
+        transitionCount = kept;
+        blocks.end[0] = reachedCount;
+        reachedCount = 0;
+    }
+
+    private void makeAdjacent(int[] keys) {
+        Arrays.fill(offsets, 0);
+        for (int t = 0; t < transitionCount; t++) {
+            offsets[keys[t]]++;
+        }
+        for (int state = 0; state < stateCount; state++) {
+            offsets[state + 1] += offsets[state];
+        }
+        for (int t = transitionCount - 1; t >= 0; t--) {
+            adjacency[--offsets[keys[t]]] = t;
+        }
+    }
+
+    // Refinable partition of the elements 0..n-1. Each set occupies the range first..end
+    // of the elements array, and marked elements are moved to the front of their set.
+    private class Partition {
+        int setCount;
+        final int[] elements;
+        final int[] location;
+        final int[] setOf;
+        final int[] first;
+        final int[] end;
+
+        Partition(int size) {
+            setCount = size > 0 ? 1 : 0;
+            elements = new int[size];
+            location = new int[size];
+            setOf = new int[size];
+            first = new int[size + 1];
+            end = new int[size + 1];
+            for (int i = 0; i < size; i++) {
+                elements[i] = i;
+                location[i] = i;
+            }
+            end[0] = size;
+        }
+
+        void mark(int element) {
+            int set = setOf[element];
+            int i = location[element];
+            int j = first[set] + marked[set];
+            elements[i] = elements[j];
+            location[elements[i]] = i;
+            elements[j] = element;
+            location[element] = j;
+            if (marked[set]++ == 0) {
+                touched[touchedCount++] = set;
+            }
+        }
+
+        void split() {
+            while (touchedCount > 0) {
+                int set = touched[--touchedCount];
+                int j = first[set] + marked[set];
+                if (j == end[set]) {
+                    marked[set] = 0;
+                    continue;
+                }
+
+                // The smaller half becomes the new set
+                if (marked[set] <= end[set] - j) {
+                    first[setCount] = first[set];
+                    end[setCount] = j;
+                    first[set] = j;
+                } else {
+                    end[setCount] = end[set];
+                    first[setCount] = j;
+                    end[set] = j;
+                }
+
+                for (int i = first[setCount]; i < end[setCount]; i++) {
+                    setOf[elements[i]] = setCount;
+                }
+                marked[set] = 0;
+                marked[setCount++] = 0;
+            }
+        }
+    }
+}
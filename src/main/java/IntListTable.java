@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+// Hash-consing table for lists of ints of any length. Every distinct list gets a dense int id
+// in insertion order, and the lists are stored back to back in one int[], list i from
+// offsets[i] until offsets[i + 1], so a list only costs as much as it is long.
+class IntListTable {
+
+    private static final int EMPTY_SLOT = -1;
+
+    private int[] values;
+    private int[] offsets;
+    private int[] hashes;
+    private int[] slots;
+    private int size;
+
+    IntListTable() {
+        clear();
+    }
+
+    // Returns the id of the first length ints of list, adding them to the table if they are not there yet.
+    int intern(int[] list, int length) {
+        int hash = hash(list, length);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY_SLOT) {
+                return add(list, length, hash, slot);
+            }
+            if (hashes[id] == hash && equalsAt(id, list, length)) {
+                return id;
+            }
+        }
+    }
+
+    int find(int[] list, int length) {
+        int hash = hash(list, length);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY_SLOT || (hashes[id] == hash && equalsAt(id, list, length))) {
+                return id;
+            }
+        }
+    }
+
+    // Copies the list into the array and returns its length
+    int get(int id, int[] into) {
+        int length = offsets[id + 1] - offsets[id];
+        System.arraycopy(values, offsets[id], into, 0, length);
+        return length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Number of ints in all the lists together
+    int valueCount() {
+        return offsets[size];
+    }
+
+    void clear() {
+        values = new int[64];
+        offsets = new int[17];
+        hashes = new int[16];
+        slots = new int[32];
+        Arrays.fill(slots, EMPTY_SLOT);
+        size = 0;
+    }
+
+    private int add(int[] list, int length, int hash, int slot) {
+        int id = size++;
+        if (size > hashes.length) {
+            offsets = Arrays.copyOf(offsets, hashes.length * 2 + 1);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        int start = offsets[id];
+        if (start + length > values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, start + length));
+        }
+
+        System.arraycopy(list, 0, values, start, length);
+        offsets[id + 1] = start + length;
+        hashes[id] = hash;
+        slots[slot] = id;
+
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY_SLOT);
+        int mask = slots.length - 1;
+
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != EMPTY_SLOT) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private boolean equalsAt(int id, int[] list, int length) {
+        int base = offsets[id];
+        if (offsets[id + 1] - base != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (values[base + i] != list[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(int[] list, int length) {
+        long hash = length;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ list[i]) * 0x9E3779B97F4A7C15L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        return (int) (hash ^ (hash >>> 33));
+    }
+}
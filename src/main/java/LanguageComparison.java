@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Language equivalence and inclusion checks that never enumerate strings.
+class LanguageComparison {
+
+    // Pairs explored by a search, each remembers the pair and the char it was reached from
+    private int[] parents = new int[16];
+    private char[] via = new char[16];
+    private int pairCount;
+
+    private LanguageComparison() {
+    }
+
+    // Hopcroft and Karp's algorithm: the states of both automata live in one union-find,
+    // every pair that must be equivalent is merged, and a pair is only expanded when its
+    // states were not merged yet. This is near-linear, the product is never built.
+    // Union-find entries are allocated on demand, so lazy automata work as well.
+    static ComparisonResult equivalent(DeterministicAutomaton left, DeterministicAutomaton right) {
+        return new LanguageComparison().runEquivalence(left, right);
+    }
+
+    private ComparisonResult runEquivalence(DeterministicAutomaton left, DeterministicAutomaton right) {
+        char[] representatives = ProductAutomaton.jointClasses(left::classOf, right::classOf, new char[Character.MAX_VALUE + 1]);
+        UnionFind sets = new UnionFind();
+        int[] leftStates = new int[16];
+        int[] rightStates = new int[16];
+
+        leftStates[0] = left.getStartState();
+        rightStates[0] = right.getStartState();
+        addPair(-1, '\0');
+        sets.union(leftNode(left.getStartState()), rightNode(right.getStartState()));
+
+        for (int current = 0; current < pairCount; current++) {
+            int leftState = leftStates[current];
+            int rightState = rightStates[current];
+            if (left.isAccepting(leftState) != right.isAccepting(rightState)) {
+                return ComparisonResult.failing(word(current));
+            }
+
+            for (int symbolClass = 1; symbolClass < representatives.length; symbolClass++) {
+                char c = representatives[symbolClass];
+                int leftNext = leftState == DeterministicAutomaton.DEAD_STATE ? leftState : left.step(leftState, c);
+                int rightNext = rightState == DeterministicAutomaton.DEAD_STATE ? rightState : right.step(rightState, c);
+                if (sets.union(leftNode(leftNext), rightNode(rightNext))) {
+                    int pair = addPair(current, c);
+                    if (pair == leftStates.length) {
+                        leftStates = Arrays.copyOf(leftStates, pair * 2);
+                        rightStates = Arrays.copyOf(rightStates, pair * 2);
+                    }
+                    leftStates[pair] = leftNext;
+                    rightStates[pair] = rightNext;
+                }
+            }
+        }
+
+        return ComparisonResult.holding();
+    }
+
+    // Antichain-based inclusion check of L(included) in L(including) for NFAs. The search
+    // runs over pairs of one state of the included automaton and the subset of states the
+    // including automaton can be in, which is subset construction on the fly. A pair
+    // (p, S) is dropped when some (p, S') with S' inside S was already seen: whatever
+    // (p, S) could reject is rejected by (p, S') too. Breadth-first order makes the
+    // counterexample a shortest one.
+    static ComparisonResult included(AutomatonIndex included, BitParallelNfa including) {
+        return new LanguageComparison().runInclusion(included, including);
+    }
+
+    private ComparisonResult runInclusion(AutomatonIndex included, BitParallelNfa including) {
+        char[] representatives = ProductAutomaton.jointClasses(c -> included.charClasses[c], including::classOf, new char[Character.MAX_VALUE + 1]);
+        int words = including.getWordCount();
+        StateSetTable subsets = new StateSetTable(words);
+        List<List<Integer>> antichains = new ArrayList<>();
+        for (int state = 0; state < included.stateCount(); state++) {
+            antichains.add(new ArrayList<>());
+        }
+
+        int[] states = new int[16];
+        int[] subsetIds = new int[16];
+        long[] current = new long[words];
+        long[] next = new long[words];
+
+        int startSubset = subsets.intern(including.getStartMask());
+        for (int state : included.startStates) {
+            antichains.get(state).add(startSubset);
+            int pair = addPair(-1, '\0');
+            if (pair == states.length) {
+                states = Arrays.copyOf(states, pair * 2);
+                subsetIds = Arrays.copyOf(subsetIds, pair * 2);
+            }
+            states[pair] = state;
+            subsetIds[pair] = startSubset;
+        }
+
+        for (int pair = 0; pair < pairCount; pair++) {
+            int state = states[pair];
+            if (included.accepting[state] && !subsets.intersects(subsetIds[pair], including.getAcceptMask())) {
+                return ComparisonResult.failing(word(pair));
+            }
+
+            subsets.get(subsetIds[pair], current);
+            for (int symbolClass = 1; symbolClass < representatives.length; symbolClass++) {
+                char c = representatives[symbolClass];
+                int[] targets = included.successors[state][included.charClasses[c]];
+                if (targets.length == 0) {
+                    continue;
+                }
+
+                including.step(current, including.classOf(c), next);
+                for (int target : targets) {
+                    if (subsumed(antichains.get(target), subsets, next)) {
+                        continue;
+                    }
+
+                    int subset = subsets.intern(next);
+                    List<Integer> antichain = antichains.get(target);
+                    antichain.removeIf(other -> subsets.isSubsetOf(subset, other));
+                    antichain.add(subset);
+
+                    int added = addPair(pair, c);
+                    if (added == states.length) {
+                        states = Arrays.copyOf(states, added * 2);
+                        subsetIds = Arrays.copyOf(subsetIds, added * 2);
+                    }
+                    states[added] = target;
+                    subsetIds[added] = subset;
+                }
+            }
+        }
+
+        return ComparisonResult.holding();
+    }
+
+    private static boolean subsumed(List<Integer> antichain, StateSetTable subsets, long[] set) {
+        for (int other : antichain) {
+            if (subsets.isSubsetOf(other, set)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int addPair(int parent, char c) {
+        if (pairCount == parents.length) {
+            parents = Arrays.copyOf(parents, pairCount * 2);
+            via = Arrays.copyOf(via, pairCount * 2);
+        }
+        parents[pairCount] = parent;
+        via[pairCount] = c;
+        return pairCount++;
+    }
+
+    private String word(int pair) {
+        StringBuilder word = new StringBuilder();
+        for (int current = pair; parents[current] >= 0; current = parents[current]) {
+            word.append(via[current]);
+        }
+        return word.reverse().toString();
+    }
+
+    // Left states take the even nodes and right states the odd ones, the dead states node 0 and 1
+    private static int leftNode(int state) {
+        return 2 * (state + 1);
+    }
+
+    private static int rightNode(int state) {
+        return 2 * (state + 1) + 1;
+    }
+
+    private static class UnionFind {
+        private int[] parent = new int[0];
+
+        // Merges the sets of both nodes and reports whether they were apart
+        boolean union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return false;
+            }
+            parent[rootB] = rootA;
+            return true;
+        }
+
+        private int find(int node) {
+            if (node >= parent.length) {
+                int oldLength = parent.length;
+                parent = Arrays.copyOf(parent, Math.max(node + 1, oldLength * 2));
+                for (int i = oldLength; i < parent.length; i++) {
+                    parent[i] = i;
+                }
+            }
+
+            while (parent[node] != node) {
+                parent[node] = parent[parent[node]];
+                node = parent[node];
+            }
+            return node;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Random;
+
+// Counts, samples and enumerates the strings of a language by length, by dynamic
+// programming over its minimal DFA. Row k of the table holds, for every state, the number
+// of strings of length k that lead from it to acceptance:
+//
+//   row 0 = 1 for accepting states, row k of s = sum over classes of |class| * row k-1 of target
+//
+// Rows are added as longer lengths are asked for and kept, so every length is counted once.
+// They are longs until a count overflows and BigIntegers from there on. A sample walks the
+// rows from the start state and picks every next char with weight equal to the number of
+// completions it leaves, which is uniform over all strings of the length without any
+// rejection. A LanguageCounter is not thread-safe.
+public class LanguageCounter {
+
+    private final CompiledAutomaton dfa;
+    private final int stateCount;
+    private final int classCount;
+
+    // Chars of every class in ascending order, and the whole alphabet
+    private final char[][] classMembers;
+    private final char[] alphabet;
+
+    private final List<long[]> longRows = new ArrayList<>();
+    private final List<BigInteger[]> bigRows = new ArrayList<>();
+
+    public LanguageCounter(CompiledAutomaton automaton) {
+        this.dfa = automaton.minimize();
+        this.stateCount = dfa.getStateCount();
+        this.classCount = dfa.getClassCount();
+
+        int[] sizes = new int[classCount];
+        StringBuilder chars = new StringBuilder();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            int symbolClass = dfa.classOf((char) c);
+            if (symbolClass != 0) {
+                sizes[symbolClass]++;
+                chars.append((char) c);
+            }
+        }
+        this.alphabet = chars.toString().toCharArray();
+
+        this.classMembers = new char[classCount][];
+        for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+            classMembers[symbolClass] = new char[sizes[symbolClass]];
+            sizes[symbolClass] = 0;
+        }
+        for (char c : alphabet) {
+            int symbolClass = dfa.classOf(c);
+            classMembers[symbolClass][sizes[symbolClass]++] = c;
+        }
+
+        long[] first = new long[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            first[state] = dfa.isAccepting(state) ? 1 : 0;
+        }
+        longRows.add(first);
+    }
+
+    public BigInteger count(int length) {
+        return count(length, dfa.getStartState());
+    }
+
+    // Throws ArithmeticException when the count does not fit into a long
+    public long countExact(int length) {
+        extendTo(length);
+        if (length < longRows.size()) {
+            return longRows.get(length)[dfa.getStartState()];
+        }
+        return count(length).longValueExact();
+    }
+
+    // A uniformly random string of the length, empty when the language has none
+    public Optional<String> sample(int length, Random random) {
+        int state = dfa.getStartState();
+        if (!hasCompletion(length, state)) {
+            return Optional.empty();
+        }
+
+        char[] word = new char[length];
+        if (length < longRows.size()) {
+            long choice = nextLong(random, longRows.get(length)[state]);
+            for (int position = 0; position < length; position++) {
+                long[] row = longRows.get(length - position - 1);
+                for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                    int target = dfa.target(state, symbolClass);
+                    long weight = target == CompiledAutomaton.DEAD_STATE ? 0 : row[target];
+                    long classWeight = weight * classMembers[symbolClass].length;
+                    if (choice < classWeight) {
+                        word[position] = classMembers[symbolClass][(int) (choice / weight)];
+                        choice %= weight;
+                        state = target;
+                        break;
+                    }
+                    choice -= classWeight;
+                }
+            }
+        } else {
+            BigInteger choice = nextBigInteger(random, count(length, state));
+            for (int position = 0; position < length; position++) {
+                int remaining = length - position - 1;
+                for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                    int target = dfa.target(state, symbolClass);
+                    BigInteger weight = target == CompiledAutomaton.DEAD_STATE ? BigInteger.ZERO : count(remaining, target);
+                    BigInteger classWeight = weight.multiply(BigInteger.valueOf(classMembers[symbolClass].length));
+                    if (choice.compareTo(classWeight) < 0) {
+                        BigInteger[] quotient = choice.divideAndRemainder(weight);
+                        word[position] = classMembers[symbolClass][quotient[0].intValue()];
+                        choice = quotient[1];
+                        state = target;
+                        break;
+                    }
+                    choice = choice.subtract(classWeight);
+                }
+            }
+        }
+        return Optional.of(new String(word));
+    }
+
+    // Accepted strings by length, and in char order within a length. Lengths without strings
+    // are skipped through the table; once no string of length at least the state count is
+    // left the language is finite and the iterator ends.
+    public Iterator<String> shortlex() {
+        return new Iterator<>() {
+            private int length = -1;
+            private char[] word;
+            private int[] states;
+            private String next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                String result = next;
+                next = advance();
+                return result;
+            }
+
+            private String advance() {
+                if (word != null && nextOfLength()) {
+                    return new String(word);
+                }
+
+                while (true) {
+                    length++;
+                    if (length >= stateCount && !hasLongerStrings(length)) {
+                        return null;
+                    }
+                    if (hasCompletion(length, dfa.getStartState())) {
+                        word = new char[length];
+                        states = new int[length + 1];
+                        states[0] = dfa.getStartState();
+                        fillSmallest(0);
+                        return new String(word);
+                    }
+                }
+            }
+
+            // Moves to the next word of the same length, changing the rightmost position that can grow
+            private boolean nextOfLength() {
+                for (int position = length - 1; position >= 0; position--) {
+                    int from = Arrays.binarySearch(alphabet, word[position]) + 1;
+                    int chosen = smallestViable(states[position], from, length - position - 1);
+                    if (chosen >= 0) {
+                        word[position] = alphabet[chosen];
+                        states[position + 1] = dfa.step(states[position], alphabet[chosen]);
+                        fillSmallest(position + 1);
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            private void fillSmallest(int from) {
+                for (int position = from; position < length; position++) {
+                    int chosen = smallestViable(states[position], 0, length - position - 1);
+                    word[position] = alphabet[chosen];
+                    states[position + 1] = dfa.step(states[position], alphabet[chosen]);
+                }
+            }
+        };
+    }
+
+    // Index of the smallest alphabet char from the given one on that leaves a completion of the remaining length
+    private int smallestViable(int state, int from, int remaining) {
+        for (int i = from; i < alphabet.length; i++) {
+            int target = dfa.step(state, alphabet[i]);
+            if (target != CompiledAutomaton.DEAD_STATE && hasCompletion(remaining, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // By the pumping argument, if some string of length at least n >= stateCount is accepted,
+    // one with length in [n, n + stateCount) is
+    private boolean hasLongerStrings(int length) {
+        for (int k = length; k < length + stateCount; k++) {
+            if (hasCompletion(k, dfa.getStartState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasCompletion(int length, int state) {
+        extendTo(length);
+        return length < longRows.size()
+                ? longRows.get(length)[state] != 0
+                : bigRows.get(length - longRows.size())[state].signum() != 0;
+    }
+
+    private BigInteger count(int length, int state) {
+        extendTo(length);
+        return length < longRows.size()
+                ? BigInteger.valueOf(longRows.get(length)[state])
+                : bigRows.get(length - longRows.size())[state];
+    }
+
+    private void extendTo(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("Negative length: " + length);
+        }
+
+        while (bigRows.isEmpty() && longRows.size() <= length) {
+            long[] row = nextLongRow(longRows.get(longRows.size() - 1));
+            if (row == null) {
+                bigRows.add(nextBigRow(toBig(longRows.get(longRows.size() - 1))));
+            } else {
+                longRows.add(row);
+            }
+        }
+        while (longRows.size() + bigRows.size() <= length) {
+            bigRows.add(nextBigRow(bigRows.get(bigRows.size() - 1)));
+        }
+    }
+
+    // Null once a count overflows
+    private long[] nextLongRow(long[] previous) {
+        long[] row = new long[stateCount];
+        try {
+            for (int state = 0; state < stateCount; state++) {
+                long sum = 0;
+                for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                    int target = dfa.target(state, symbolClass);
+                    if (target != CompiledAutomaton.DEAD_STATE && previous[target] != 0) {
+                        sum = Math.addExact(sum, Math.multiplyExact(previous[target], (long) classMembers[symbolClass].length));
+                    }
+                }
+                row[state] = sum;
+            }
+        } catch (ArithmeticException overflow) {
+            return null;
+        }
+        return row;
+    }
+
+    private BigInteger[] nextBigRow(BigInteger[] previous) {
+        BigInteger[] row = new BigInteger[stateCount];
+        for (int state = 0; state < stateCount; state++) {
+            BigInteger sum = BigInteger.ZERO;
+            for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                int target = dfa.target(state, symbolClass);
+                if (target != CompiledAutomaton.DEAD_STATE && previous[target].signum() != 0) {
+                    sum = sum.add(previous[target].multiply(BigInteger.valueOf(classMembers[symbolClass].length)));
+                }
+            }
+            row[state] = sum;
+        }
+        return row;
+    }
+
+    private static BigInteger[] toBig(long[] row) {
+        BigInteger[] result = new BigInteger[row.length];
+        for (int i = 0; i < row.length; i++) {
+            result[i] = BigInteger.valueOf(row[i]);
+        }
+        return result;
+    }
+
+    // Uniform in [0, bound), retrying the few draws that would bias the remainder
+    private static long nextLong(Random random, long bound) {
+        while (true) {
+            long bits = random.nextLong() >>> 1;
+            long value = bits % bound;
+            if (bits - value + (bound - 1) >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static BigInteger nextBigInteger(Random random, BigInteger bound) {
+        while (true) {
+            BigInteger value = new BigInteger(bound.bitLength(), random);
+            if (value.compareTo(bound) < 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+// Uniform grid over a layout that answers which states and transitions may be visible in a
+// rectangle. States go into the cell of their centre, an edge into every cell its bounding
+// box covers. Edges that would cover too many cells are kept in one list that every query
+// checks by bounding box, so a few long edges cannot make the grid quadratic in size.
+class LayoutGrid {
+
+    private static final double CELL_SIZE = AutomatonLayout.SPACING * 2;
+    private static final int MAX_CELLS_PER_EDGE = 16;
+
+    private final AutomatonLayout layout;
+    private final int columns;
+    private final int rows;
+
+    // Members of cell c are at [start[c], start[c + 1]) of the member arrays
+    private final int[] stateStart;
+    private final int[] stateMembers;
+    private final int[] edgeStart;
+    private final int[] edgeMembers;
+    private final int[] longEdges;
+
+    // Stamps keep an edge that spans several cells from being reported more than once per query
+    private final int[] edgeStamps;
+    private int stamp;
+
+    LayoutGrid(AutomatonLayout layout) {
+        this.layout = layout;
+        this.columns = Math.max(1, (int) Math.ceil(layout.width / CELL_SIZE));
+        this.rows = Math.max(1, (int) Math.ceil(layout.height / CELL_SIZE));
+        int cells = columns * rows;
+
+        stateStart = new int[cells + 1];
+        for (int state = 0; state < layout.getStateCount(); state++) {
+            stateStart[cell(column(layout.x[state]), row(layout.y[state])) + 1]++;
+        }
+        prefixSums(stateStart);
+        stateMembers = new int[layout.getStateCount()];
+        int[] fill = Arrays.copyOf(stateStart, cells);
+        for (int state = 0; state < layout.getStateCount(); state++) {
+            stateMembers[fill[cell(column(layout.x[state]), row(layout.y[state]))]++] = state;
+        }
+
+        // Count the cells every edge covers, then fill them in
+        edgeStart = new int[cells + 1];
+        int[] box = new int[4];
+        int longCount = 0;
+        for (int edge = 0; edge < layout.getEdgeCount(); edge++) {
+            if (!cellBox(edge, box)) {
+                longCount++;
+                continue;
+            }
+            for (int row = box[2]; row <= box[3]; row++) {
+                for (int column = box[0]; column <= box[1]; column++) {
+                    edgeStart[cell(column, row) + 1]++;
+                }
+            }
+        }
+        prefixSums(edgeStart);
+
+        edgeMembers = new int[edgeStart[cells]];
+        longEdges = new int[longCount];
+        fill = Arrays.copyOf(edgeStart, cells);
+        int longFill = 0;
+        for (int edge = 0; edge < layout.getEdgeCount(); edge++) {
+            if (!cellBox(edge, box)) {
+                longEdges[longFill++] = edge;
+                continue;
+            }
+            for (int row = box[2]; row <= box[3]; row++) {
+                for (int column = box[0]; column <= box[1]; column++) {
+                    edgeMembers[fill[cell(column, row)]++] = edge;
+                }
+            }
+        }
+
+        edgeStamps = new int[layout.getEdgeCount()];
+    }
+
+    // First and last column and row of the edge's bounding box, false if it covers too many cells
+    private boolean cellBox(int edge, int[] box) {
+        double fromX = layout.x[layout.edgeFrom[edge]];
+        double fromY = layout.y[layout.edgeFrom[edge]];
+        double toX = layout.x[layout.edgeTo[edge]];
+        double toY = layout.y[layout.edgeTo[edge]];
+        box[0] = column(Math.min(fromX, toX));
+        box[1] = column(Math.max(fromX, toX));
+        box[2] = row(Math.min(fromY, toY));
+        box[3] = row(Math.max(fromY, toY));
+        return (box[1] - box[0] + 1) * (box[3] - box[2] + 1) <= MAX_CELLS_PER_EDGE;
+    }
+
+    // Reports every state whose centre lies in the rectangle and every edge whose bounding box meets it
+    void query(double minX, double minY, double maxX, double maxY, IntConsumer states, IntConsumer edges) {
+        stamp++;
+        for (int row = row(minY); row <= row(maxY); row++) {
+            for (int column = column(minX); column <= column(maxX); column++) {
+                int cell = cell(column, row);
+                for (int i = stateStart[cell]; i < stateStart[cell + 1]; i++) {
+                    int state = stateMembers[i];
+                    if (layout.x[state] >= minX && layout.x[state] <= maxX && layout.y[state] >= minY && layout.y[state] <= maxY) {
+                        states.accept(state);
+                    }
+                }
+                for (int i = edgeStart[cell]; i < edgeStart[cell + 1]; i++) {
+                    reportEdge(edgeMembers[i], minX, minY, maxX, maxY, edges);
+                }
+            }
+        }
+        for (int edge : longEdges) {
+            reportEdge(edge, minX, minY, maxX, maxY, edges);
+        }
+    }
+
+    private void reportEdge(int edge, double minX, double minY, double maxX, double maxY, IntConsumer edges) {
+        if (edgeStamps[edge] == stamp) {
+            return;
+        }
+        edgeStamps[edge] = stamp;
+
+        double fromX = layout.x[layout.edgeFrom[edge]];
+        double fromY = layout.y[layout.edgeFrom[edge]];
+        double toX = layout.x[layout.edgeTo[edge]];
+        double toY = layout.y[layout.edgeTo[edge]];
+        if (Math.max(fromX, toX) >= minX && Math.min(fromX, toX) <= maxX && Math.max(fromY, toY) >= minY && Math.min(fromY, toY) <= maxY) {
+            edges.accept(edge);
+        }
+    }
+
+    private int column(double x) {
+        return Math.min(columns - 1, Math.max(0, (int) (x / CELL_SIZE)));
+    }
+
+    private int row(double y) {
+        return Math.min(rows - 1, Math.max(0, (int) (y / CELL_SIZE)));
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+
+    private static void prefixSums(int[] counts) {
+        for (int i = 0; i < counts.length - 1; i++) {
+            counts[i + 1] += counts[i];
+        }
+    }
+}
@@ -0,0 +1,163 @@
+import java.awt.*;
+import java.util.Arrays;
+
+// Draws the part of an AutomatonLayout that falls into a view, with less detail the further
+// out the view is zoomed: names, symbols and arrowheads when states are big enough to read,
+// bare circles and arrows below that, and dots and lines for the overview. Only the states
+// and transitions the grid reports for the view are touched, so the cost of a frame
+// depends on what is on screen, not on the size of the automaton.
+class LayoutPainter {
+
+    static final Color STATE_COLOR = Color.decode("#9F00FF");
+    static final Color OVERVIEW_EDGE_COLOR = new Color(0, 0, 0, 80);
+    static final int STATE_RADIUS = 20;
+
+    private static final double DETAIL_SCALE = 0.5;
+    private static final double OUTLINE_SCALE = 0.15;
+
+    private final AutomatonLayout layout;
+    private final LayoutGrid grid;
+
+    // Visible states and edges of the current frame, reused between frames
+    private int[] states = new int[64];
+    private int stateCount;
+    private int[] edges = new int[64];
+    private int edgeCount;
+
+    LayoutPainter(AutomatonLayout layout) {
+        this.layout = layout;
+        this.grid = new LayoutGrid(layout);
+    }
+
+    // Paints a view of width x height pixels whose top left corner shows the layout point (left, top)
+    void paint(Graphics2D g, double left, double top, double scale, int width, int height) {
+        double padding = STATE_RADIUS * 4;
+        stateCount = 0;
+        edgeCount = 0;
+        grid.query(left - padding, top - padding, left + width / scale + padding, top + height / scale + padding,
+                this::addState, this::addEdge);
+
+        boolean detail = scale >= DETAIL_SCALE;
+        boolean outline = scale >= OUTLINE_SCALE;
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, detail ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        g.setColor(outline ? Color.BLACK : OVERVIEW_EDGE_COLOR);
+
+        for (int i = 0; i < edgeCount; i++) {
+            int edge = edges[i];
+            int from = layout.edgeFrom[edge];
+            int to = layout.edgeTo[edge];
+            double fromX = (layout.x[from] - left) * scale;
+            double fromY = (layout.y[from] - top) * scale;
+
+            if (from == to) {
+                if (outline) {
+                    drawSelfLoop(g, fromX, fromY, scale, detail ? layout.edgeLabels[edge] : null);
+                }
+                continue;
+            }
+
+            double toX = (layout.x[to] - left) * scale;
+            double toY = (layout.y[to] - top) * scale;
+            if (outline) {
+                drawArrow(g, fromX, fromY, toX, toY, scale, detail ? layout.edgeLabels[edge] : null);
+            } else {
+                g.drawLine((int) fromX, (int) fromY, (int) toX, (int) toY);
+            }
+        }
+
+        if (outline && layout.getStateCount() > 0) {
+            double startX = (layout.x[layout.startState] - left) * scale;
+            double startY = (layout.y[layout.startState] - top) * scale;
+            drawArrow(g, startX + 80 * scale, startY, startX, startY, scale, null);
+        }
+
+        for (int i = 0; i < stateCount; i++) {
+            int state = states[i];
+            double x = (layout.x[state] - left) * scale;
+            double y = (layout.y[state] - top) * scale;
+            if (outline) {
+                drawState(g, state, x, y, scale, detail);
+            } else {
+                int size = Math.max(2, (int) (2 * STATE_RADIUS * scale));
+                g.setColor(layout.accepting[state] ? Color.BLACK : STATE_COLOR);
+                g.fillRect((int) x - size / 2, (int) y - size / 2, size, size);
+            }
+        }
+    }
+
+    private void addState(int state) {
+        if (stateCount == states.length) {
+            states = Arrays.copyOf(states, stateCount * 2);
+        }
+        states[stateCount++] = state;
+    }
+
+    private void addEdge(int edge) {
+        if (edgeCount == edges.length) {
+            edges = Arrays.copyOf(edges, edgeCount * 2);
+        }
+        edges[edgeCount++] = edge;
+    }
+
+    private void drawState(Graphics2D g, int state, double x, double y, double scale, boolean detail) {
+        int radius = (int) Math.round(STATE_RADIUS * scale);
+        g.setColor(STATE_COLOR);
+        g.fillOval((int) x - radius, (int) y - radius, 2 * radius, 2 * radius);
+        g.setColor(Color.BLACK);
+        g.drawOval((int) x - radius, (int) y - radius, 2 * radius, 2 * radius);
+
+        if (layout.accepting[state]) {
+            int inner = radius * 3 / 4;
+            g.drawOval((int) x - inner, (int) y - inner, 2 * inner, 2 * inner);
+        }
+
+        if (detail) {
+            String name = layout.stateNames[state];
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(name, (int) x - metrics.stringWidth(name) / 2, (int) y + metrics.getAscent() / 2 - 1);
+        }
+    }
+
+    // Straight line between the state borders, the label sits before the middle so the labels of opposite edges stay apart
+    private void drawArrow(Graphics2D g, double fromX, double fromY, double toX, double toY, double scale, String label) {
+        double dx = toX - fromX;
+        double dy = toY - fromY;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance < 1) {
+            return;
+        }
+
+        double radius = STATE_RADIUS * scale;
+        double unitX = dx / distance;
+        double unitY = dy / distance;
+        double tipX = toX - unitX * radius;
+        double tipY = toY - unitY * radius;
+        g.drawLine((int) (fromX + unitX * radius), (int) (fromY + unitY * radius), (int) tipX, (int) tipY);
+
+        double headLength = Math.max(4, 10 * scale);
+        double angle = Math.atan2(dy, dx);
+        Polygon head = new Polygon();
+        head.addPoint((int) tipX, (int) tipY);
+        head.addPoint((int) (tipX - headLength * Math.cos(angle - Math.PI / 6)), (int) (tipY - headLength * Math.sin(angle - Math.PI / 6)));
+        head.addPoint((int) (tipX - headLength * Math.cos(angle + Math.PI / 6)), (int) (tipY - headLength * Math.sin(angle + Math.PI / 6)));
+        g.fill(head);
+
+        if (label != null) {
+            g.drawString(label, (int) (fromX + dx * 0.4 - unitY * 8), (int) (fromY + dy * 0.4 + unitX * 8));
+        }
+    }
+
+    private void drawSelfLoop(Graphics2D g, double x, double y, double scale, String label) {
+        int loopRadius = (int) Math.round(STATE_RADIUS * scale);
+        g.drawOval((int) x - loopRadius, (int) y - loopRadius * 2, loopRadius * 2, loopRadius * 2);
+
+        double arrowSize = Math.max(4, 15 * scale);
+        int topY = (int) y - loopRadius * 2;
+        g.drawLine((int) x, topY, (int) (x + arrowSize * Math.cos(Math.PI / 6)), (int) (topY + arrowSize * Math.sin(Math.PI / 6)));
+        g.drawLine((int) x, topY, (int) (x + arrowSize * Math.cos(-Math.PI / 6)), (int) (topY + arrowSize * Math.sin(-Math.PI / 6)));
+
+        if (label != null) {
+            g.drawString(label, (int) x - g.getFontMetrics().stringWidth(label) / 2, topY - 10);
+        }
+    }
+}
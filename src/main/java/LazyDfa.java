@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+// Determinizes on the fly while matching, in the style of RE2. A DFA state (a set of NFA
+// states) and its outgoing transition are only built the first time an input reaches
+// them, and they are kept in a cache with a memory budget. When the budget is exceeded
+// the cache is flushed, and if flushes come so often that the cache no longer pays off,
+// the rest of the current input is matched by plain NFA simulation instead.
+public class LazyDfa implements AutomatonMatcher {
+
+    public static final long DEFAULT_CACHE_BYTES = 8L << 20;
+
+    private static final int UNKNOWN = -2;
+    private static final int DEAD = -1;
+
+    // A flush is considered thrashing when fewer characters than this were matched per cached state
+    private static final int MIN_CHARS_PER_STATE = 10;
+
+    private final BitParallelNfa nfa;
+    private final long maxCacheBytes;
+    private final int words;
+    private final int classCount;
+    private final StateSetTable states;
+
+    private int[] transitions;
+    private boolean[] accepting;
+    private int startState;
+
+    private int current;
+    private boolean simulating;
+    private long[] currentSet;
+    private long[] nextSet;
+    private long charsSinceFlush;
+    private int flushCount;
+
+    public LazyDfa(BitParallelNfa nfa, long maxCacheBytes) {
+        this.nfa = nfa;
+        this.maxCacheBytes = maxCacheBytes;
+        this.words = nfa.getWordCount();
+        this.classCount = nfa.getClassCount();
+        this.states = new StateSetTable(words);
+        this.currentSet = new long[words];
+        this.nextSet = new long[words];
+
+        flush();
+        reset();
+    }
+
+    @Override
+    public void feed(char symbol) {
+        if (current == DEAD) {
+            return;
+        }
+
+        int symbolClass = nfa.classOf(symbol);
+        if (simulating) {
+            simulate(symbolClass);
+            return;
+        }
+
+        charsSinceFlush++;
+        int next = transitions[current * classCount + symbolClass];
+        current = next != UNKNOWN ? next : computeTransition(current, symbolClass);
+    }
+
+    @Override
+    public boolean isAccepting() {
+        if (current == DEAD) {
+            return false;
+        }
+        return simulating ? BitParallelNfa.intersects(currentSet, nfa.getAcceptMask()) : accepting[current];
+    }
+
+    @Override
+    public boolean isDead() {
+        return current == DEAD;
+    }
+
+    @Override
+    public void reset() {
+        simulating = false;
+        current = startState;
+    }
+
+    public int getCachedStateCount() {
+        return states.size();
+    }
+
+    public int getFlushCount() {
+        return flushCount;
+    }
+
+    public long getCacheBytes() {
+        return states.memoryBytes() + (long) transitions.length * Integer.BYTES + accepting.length;
+    }
+
+    private int computeTransition(int state, int symbolClass) {
+        states.get(state, currentSet);
+        if (!nfa.step(currentSet, symbolClass, nextSet)) {
+            transitions[state * classCount + symbolClass] = DEAD;
+            return DEAD;
+        }
+
+        int known = states.find(nextSet);
+        if (known >= 0) {
+            transitions[state * classCount + symbolClass] = known;
+            return known;
+        }
+
+        if (cacheFull()) {
+            boolean thrashing = charsSinceFlush < (long) MIN_CHARS_PER_STATE * states.size();
+            flush();
+
+            if (thrashing || cacheFull()) {
+                // The cache does not pay off for this input, finish it by simulating the NFA
+                long[] swap = currentSet;
+                currentSet = nextSet;
+                nextSet = swap;
+                simulating = true;
+                return 0;
+            }
+
+            return addState(nextSet);
+        }
+
+        int next = addState(nextSet);
+        transitions[state * classCount + symbolClass] = next;
+        return next;
+    }
+
+    private void simulate(int symbolClass) {
+        if (!nfa.step(currentSet, symbolClass, nextSet)) {
+            current = DEAD;
+            return;
+        }
+
+        long[] swap = currentSet;
+        currentSet = nextSet;
+        nextSet = swap;
+    }
+
+    private int addState(long[] set) {
+        int id = states.intern(set);
+
+        if ((id + 1) * classCount > transitions.length) {
+            int capacity = Math.max(id + 1, accepting.length * 2);
+            transitions = Arrays.copyOf(transitions, capacity * classCount);
+            Arrays.fill(transitions, accepting.length * classCount, transitions.length, UNKNOWN);
+            accepting = Arrays.copyOf(accepting, capacity);
+        }
+
+        accepting[id] = BitParallelNfa.intersects(set, nfa.getAcceptMask());
+        return id;
+    }
+
+    private void flush() {
+        if (transitions != null) {
+            flushCount++;
+        }
+
+        states.clear();
+        transitions = new int[16 * classCount];
+        Arrays.fill(transitions, UNKNOWN);
+        accepting = new boolean[16];
+        charsSinceFlush = 0;
+        startState = addState(nfa.getStartMask());
+    }
+
+    // Estimated cost of one more state: its set, its transition row, hash table entries and accept flag
+    private boolean cacheFull() {
+        long bytesPerState = (long) words * Long.BYTES + (long) classCount * Integer.BYTES + 3L * Integer.BYTES + 1;
+        return (states.size() + 1L) * bytesPerState > maxCacheBytes;
+    }
+}
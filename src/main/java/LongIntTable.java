@@ -0,0 +1,94 @@
+// Open addressing map from non-negative longs to ints, for the packed keys of the parsers.
+// Keys are stored plus one so that zero can mark an empty slot, and the table doubles when
+// it is half full.
+class LongIntTable {
+
+    static final int MISSING = Integer.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    LongIntTable() {
+        this(1 << 10);
+    }
+
+    LongIntTable(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+        keys = new long[slots];
+        values = new int[slots];
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key + 1) {
+                return values[slot];
+            }
+            if (keys[slot] == 0) {
+                return MISSING;
+            }
+        }
+    }
+
+    void put(long key, int value) {
+        int slot = find(key);
+        if (keys[slot] == 0) {
+            keys[slot] = key + 1;
+            grow();
+            slot = find(key);
+        }
+        values[slot] = value;
+    }
+
+    // Adds the key with the value unless it is there already, true if it was added
+    boolean putIfAbsent(long key, int value) {
+        int slot = find(key);
+        if (keys[slot] != 0) {
+            return false;
+        }
+        keys[slot] = key + 1;
+        values[slot] = value;
+        grow();
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != 0 && keys[slot] != key + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        if (++size * 2 <= keys.length) {
+            return;
+        }
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slot(oldKeys[i] - 1, mask);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+}
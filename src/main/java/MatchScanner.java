@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Finds all non-overlapping, non-empty occurrences of a language in a text with leftmost-
+// longest semantics: of all matches the one starting first wins, and of those the longest.
+//
+// The forward pass runs a lazily built DFA for Sigma*L. Its states are not plain sets but
+// ordered lists of the threads of the minimized DFA of L, one per start position that is
+// still alive, oldest first. Two threads in the same DFA state have the same future, so
+// only the older one is kept. Once a thread accepts, every younger thread is dropped and
+// no new ones are started, so the list only shrinks from there and the last accepting
+// position is the end of the leftmost-longest match. A reverse DFA of L, run backwards
+// from that end, then finds the match start. Both DFAs cache their states, a scan
+// allocates nothing per character. A MatchScanner is not thread-safe.
+public class MatchScanner {
+
+    public interface SpanConsumer {
+        void accept(int start, int end);
+    }
+
+    private static final int UNKNOWN = -2;
+    private static final int DEAD = -1;
+
+    private final CompiledAutomaton dfa;
+    private final int classCount;
+    private final long maxCacheBytes;
+
+    // Thread of a match starting at the current position: the start state without its acceptance
+    private final int fresh;
+    private final int[] threads;
+    private final int[] nextThreads;
+    private final int[] seen;
+    private int stamp;
+
+    // Forward DFA, a state is its list of threads. Until a match is found the list ends with fresh,
+    // after that it never holds fresh again, so the list alone tells whether the state has matched.
+    private final IntListTable states = new IntListTable();
+    private int[] transitions;
+    private boolean[] matchEnds;
+    private int startState;
+    private int flushCount;
+
+    private final LazyDfa reverse;
+
+    public MatchScanner(FiniteAutomaton automaton) {
+        this(automaton, LazyDfa.DEFAULT_CACHE_BYTES);
+    }
+
+    public MatchScanner(FiniteAutomaton automaton, long maxCacheBytes) {
+        this.dfa = automaton.compile().minimize();
+        this.classCount = dfa.getClassCount();
+        this.maxCacheBytes = maxCacheBytes;
+        this.fresh = dfa.getStateCount();
+        this.threads = new int[fresh + 1];
+        this.nextThreads = new int[fresh + 1];
+        this.seen = new int[fresh + 1];
+        this.reverse = new LazyDfa(reversed(), maxCacheBytes);
+
+        flush();
+    }
+
+    public void scan(CharSequence text, SpanConsumer consumer) {
+        int length = text.length();
+        int position = 0;
+
+        while (position < length) {
+            int state = startState;
+            int end = -1;
+            for (int i = position; i < length; i++) {
+                int symbolClass = dfa.classOf(text.charAt(i));
+                int next = transitions[state * classCount + symbolClass];
+                state = next != UNKNOWN ? next : computeTransition(state, symbolClass);
+                if (state == DEAD) {
+                    break;
+                }
+                if (matchEnds[state]) {
+                    end = i + 1;
+                }
+            }
+
+            if (end < 0) {
+                return;
+            }
+            consumer.accept(findStart(text, position, end), end);
+            position = end;
+        }
+    }
+
+    // Maps the file and reads its bytes as ISO-8859-1, so the spans are byte offsets
+    public void scan(Path file, SpanConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Cannot scan files over 2 GB: " + file);
+            }
+            scan(new ByteSequence(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)), consumer);
+        }
+    }
+
+    public int count(CharSequence text) {
+        int[] count = new int[1];
+        scan(text, (start, end) -> count[0]++);
+        return count[0];
+    }
+
+    public int getCachedStateCount() {
+        return states.size();
+    }
+
+    public int getFlushCount() {
+        return flushCount;
+    }
+
+    // Leftmost position from which the text up to end is a match
+    private int findStart(CharSequence text, int from, int end) {
+        reverse.reset();
+        int start = end;
+        for (int i = end - 1; i >= from; i--) {
+            reverse.feed(text.charAt(i));
+            if (reverse.isDead()) {
+                break;
+            }
+            if (reverse.isAccepting()) {
+                start = i;
+            }
+        }
+        return start;
+    }
+
+    private int computeTransition(int state, int symbolClass) {
+        int count = states.get(state, threads);
+        boolean matched = threads[count - 1] != fresh;
+
+        // Step every thread, keeping the oldest of equal ones and cutting after the first that accepts
+        stamp++;
+        int nextCount = 0;
+        for (int i = 0; i < count; i++) {
+            int target = dfa.target(threads[i] == fresh ? dfa.getStartState() : threads[i], symbolClass);
+            if (target == DEAD || seen[target] == stamp) {
+                continue;
+            }
+            seen[target] = stamp;
+            nextThreads[nextCount++] = target;
+            if (dfa.isAccepting(target)) {
+                matched = true;
+                break;
+            }
+        }
+        boolean matchEnd = nextCount > 0 && dfa.isAccepting(nextThreads[nextCount - 1]);
+
+        int next;
+        if (matched && nextCount == 0) {
+            next = DEAD;
+        } else {
+            if (!matched) {
+                nextThreads[nextCount++] = fresh;
+            }
+            int known = states.find(nextThreads, nextCount);
+            if (known >= 0) {
+                next = known;
+            } else if (cacheFull(nextCount)) {
+                // A full cache is dropped as a whole, the current scan continues from the new copy of the target
+                flush();
+                return addState(nextThreads, nextCount, matchEnd);
+            } else {
+                next = addState(nextThreads, nextCount, matchEnd);
+            }
+        }
+
+        transitions[state * classCount + symbolClass] = next;
+        return next;
+    }
+
+    private int addState(int[] list, int count, boolean matchEnd) {
+        int id = states.intern(list, count);
+        if (id == matchEnds.length) {
+            transitions = Arrays.copyOf(transitions, id * 2 * classCount);
+            Arrays.fill(transitions, id * classCount, transitions.length, UNKNOWN);
+            matchEnds = Arrays.copyOf(matchEnds, id * 2);
+        }
+        matchEnds[id] = matchEnd;
+        return id;
+    }
+
+    private void flush() {
+        if (transitions != null) {
+            flushCount++;
+        }
+
+        states.clear();
+        transitions = new int[16 * classCount];
+        Arrays.fill(transitions, UNKNOWN);
+        matchEnds = new boolean[16];
+
+        threads[0] = fresh;
+        startState = addState(threads, 1, false);
+    }
+
+    // Estimated cost of one more state with count threads: the threads of every state, their
+    // transition rows, offsets and hash table entries
+    private boolean cacheFull(int count) {
+        long bytesPerState = (long) classCount * Integer.BYTES + 4L * Integer.BYTES;
+        return (states.size() + 1L) * bytesPerState + ((long) states.valueCount() + count) * Integer.BYTES > maxCacheBytes;
+    }
+
+    // Reverse of the minimized DFA with the start state split off as a non-accepting copy,
+    // so only non-empty matches are found: it starts in every accepting state and accepts
+    // when it has read a match backwards. Built straight from the class table, state fresh
+    // is the copy.
+    private BitParallelNfa reversed() {
+        int[][] counts = new int[fresh + 1][classCount];
+        for (int state = 0; state < fresh; state++) {
+            for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                int target = dfa.target(state, symbolClass);
+                if (target != DEAD) {
+                    counts[target][symbolClass] += state == dfa.getStartState() ? 2 : 1;
+                }
+            }
+        }
+
+        int[][][] predecessors = new int[fresh + 1][classCount][];
+        for (int state = 0; state <= fresh; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                predecessors[state][symbolClass] = new int[counts[state][symbolClass]];
+                counts[state][symbolClass] = 0;
+            }
+        }
+        for (int state = 0; state < fresh; state++) {
+            for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                int target = dfa.target(state, symbolClass);
+                if (target != DEAD) {
+                    predecessors[target][symbolClass][counts[target][symbolClass]++] = state;
+                }
+            }
+        }
+        // The copy has the largest id, so it goes last and the lists stay ascending
+        for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+            int target = dfa.target(dfa.getStartState(), symbolClass);
+            if (target != DEAD) {
+                predecessors[target][symbolClass][counts[target][symbolClass]++] = fresh;
+            }
+        }
+
+        String[] names = new String[fresh + 1];
+        int acceptingCount = 0;
+        for (int state = 0; state <= fresh; state++) {
+            names[state] = "q" + state;
+            if (state < fresh && dfa.isAccepting(state)) {
+                acceptingCount++;
+            }
+        }
+        int[] startStates = new int[acceptingCount];
+        for (int state = 0, next = 0; state < fresh; state++) {
+            if (dfa.isAccepting(state)) {
+                startStates[next++] = state;
+            }
+        }
+        boolean[] accepting = new boolean[fresh + 1];
+        accepting[fresh] = true;
+
+        return new BitParallelNfa(dfa.indexOver(names, accepting, startStates, predecessors));
+    }
+
+    // Read-only view of mapped bytes as ISO-8859-1 chars
+    private static class ByteSequence implements CharSequence {
+        private final ByteBuffer bytes;
+
+        ByteSequence(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new ByteSequence(bytes.slice(start, end - start));
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[bytes.limit()];
+            bytes.get(0, copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,301 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Shrinks an NFA before subset construction without changing its language. States that
+// are unreachable or cannot reach acceptance are trimmed first. Then two quotients are
+// taken in turn until neither merges anything: forward bisimilar states (same acceptance,
+// successors in the same blocks on every class) have the same future and backward
+// bisimilar states (both start states or neither, predecessors in the same blocks) have
+// the same past. Merging either kind keeps the language, and each can enable the other.
+//
+// Both partitions are found by signature refinement, which is O(n * m) in the worst case
+// but takes a handful of rounds on the automata built from grammars and regexes.
+class NfaReducer {
+
+    private static final int[] NO_STATES = new int[0];
+
+    private NfaReducer() {
+    }
+
+    static AutomatonIndex reduce(AutomatonIndex index) {
+        AutomatonIndex reduced = trim(index);
+
+        while (true) {
+            int before = reduced.stateCount();
+            reduced = quotient(reduced, forwardPartition(reduced));
+            reduced = quotient(reduced, backwardPartition(reduced));
+            if (reduced.stateCount() == before) {
+                return reduced;
+            }
+        }
+    }
+
+    // Keeps the states that are reachable from a start state and can reach an accepting one
+    private static AutomatonIndex trim(AutomatonIndex index) {
+        int stateCount = index.stateCount();
+        int[][][] predecessors = reverse(index.successors, stateCount, index.classCount);
+
+        boolean[] reachable = new boolean[stateCount];
+        search(index.successors, index.startStates, reachable);
+
+        int[] accepting = new int[stateCount];
+        int acceptingCount = 0;
+        for (int state = 0; state < stateCount; state++) {
+            if (index.accepting[state] && reachable[state]) {
+                accepting[acceptingCount++] = state;
+            }
+        }
+        boolean[] productive = new boolean[stateCount];
+        search(predecessors, Arrays.copyOf(accepting, acceptingCount), productive);
+
+        int[] block = new int[stateCount];
+        int kept = 0;
+        for (int state = 0; state < stateCount; state++) {
+            block[state] = reachable[state] && productive[state] ? kept++ : -1;
+        }
+
+        // The empty language keeps the start state alone, so there is always a state 0
+        if (kept == 0) {
+            int[][][] successors = new int[1][index.classCount][];
+            Arrays.fill(successors[0], NO_STATES);
+            return new AutomatonIndex(index, new String[]{index.stateNames[0]}, new boolean[1], new int[]{0}, successors);
+        }
+
+        if (kept == stateCount) {
+            return index;
+        }
+        return quotient(index, block);
+    }
+
+    private static void search(int[][][] edges, int[] from, boolean[] visited) {
+        int[] stack = new int[visited.length];
+        int size = 0;
+        for (int state : from) {
+            if (!visited[state]) {
+                visited[state] = true;
+                stack[size++] = state;
+            }
+        }
+
+        while (size > 0) {
+            for (int[] targets : edges[stack[--size]]) {
+                for (int target : targets) {
+                    if (!visited[target]) {
+                        visited[target] = true;
+                        stack[size++] = target;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int[] forwardPartition(AutomatonIndex index) {
+        return refine(index.successors, index.accepting, index.classCount);
+    }
+
+    private static int[] backwardPartition(AutomatonIndex index) {
+        boolean[] starting = new boolean[index.stateCount()];
+        for (int state : index.startStates) {
+            starting[state] = true;
+        }
+        return refine(reverse(index.successors, index.stateCount(), index.classCount), starting, index.classCount);
+    }
+
+    // Coarsest partition that separates the flag and in which states of a block have their
+    // edges into the same set of blocks on every class. Every round splits blocks by the
+    // signature (old block, blocks reached on class 1, class 2, ...) until nothing splits.
+    private static int[] refine(int[][][] edges, boolean[] flag, int classCount) {
+        int stateCount = edges.length;
+        int[] block = new int[stateCount];
+        int blockCount = 0;
+        boolean[] seenFlag = new boolean[2];
+        int[] flagBlock = new int[2];
+        for (int state = 0; state < stateCount; state++) {
+            int value = flag[state] ? 1 : 0;
+            if (!seenFlag[value]) {
+                seenFlag[value] = true;
+                flagBlock[value] = blockCount++;
+            }
+            block[state] = flagBlock[value];
+        }
+
+        int[] buffer = new int[stateCount];
+        int[] stamps = new int[stateCount];
+        int stamp = 0;
+        while (true) {
+            Map<Signature, Integer> signatures = new HashMap<>();
+            int[] next = new int[stateCount];
+
+            for (int state = 0; state < stateCount; state++) {
+                IntList signature = new IntList();
+                signature.add(block[state]);
+                for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                    stamp++;
+                    int size = 0;
+                    for (int target : edges[state][symbolClass]) {
+                        if (stamps[block[target]] != stamp) {
+                            stamps[block[target]] = stamp;
+                            buffer[size++] = block[target];
+                        }
+                    }
+                    Arrays.sort(buffer, 0, size);
+                    signature.add(-size - 1);
+                    for (int i = 0; i < size; i++) {
+                        signature.add(buffer[i]);
+                    }
+                }
+                next[state] = signatures.computeIfAbsent(new Signature(signature.toArray()), key -> signatures.size());
+            }
+
+            if (signatures.size() == blockCount) {
+                return block;
+            }
+            block = next;
+            blockCount = signatures.size();
+        }
+    }
+
+    // Merges every block into one state, -1 drops a state. The block holding the lowest
+    // start state becomes state 0, the other blocks keep their order and the name of
+    // their first member.
+    private static AutomatonIndex quotient(AutomatonIndex index, int[] block) {
+        int blockCount = 0;
+        for (int value : block) {
+            blockCount = Math.max(blockCount, value + 1);
+        }
+        if (blockCount == index.stateCount()) {
+            return index;
+        }
+
+        int[] order = new int[blockCount];
+        Arrays.fill(order, -1);
+        int first = block[index.startStates[0]];
+        for (int state : index.startStates) {
+            if (block[state] >= 0) {
+                first = block[state];
+                break;
+            }
+        }
+        order[first] = 0;
+        int ordered = 1;
+        for (int value : block) {
+            if (value >= 0 && order[value] < 0) {
+                order[value] = ordered++;
+            }
+        }
+
+        String[] names = new String[blockCount];
+        boolean[] accepting = new boolean[blockCount];
+        int[][][] successors = new int[blockCount][index.classCount][];
+        IntList[][] targets = new IntList[blockCount][index.classCount];
+
+        for (int state = 0; state < index.stateCount(); state++) {
+            if (block[state] < 0) {
+                continue;
+            }
+
+            int merged = order[block[state]];
+            if (names[merged] == null) {
+                names[merged] = index.stateNames[state];
+            }
+            accepting[merged] |= index.accepting[state];
+            for (int symbolClass = 1; symbolClass < index.classCount; symbolClass++) {
+                if (targets[merged][symbolClass] == null) {
+                    targets[merged][symbolClass] = new IntList();
+                }
+                for (int target : index.successors[state][symbolClass]) {
+                    if (block[target] >= 0) {
+                        targets[merged][symbolClass].add(order[block[target]]);
+                    }
+                }
+            }
+        }
+
+        for (int merged = 0; merged < blockCount; merged++) {
+            successors[merged][0] = NO_STATES;
+            for (int symbolClass = 1; symbolClass < index.classCount; symbolClass++) {
+                successors[merged][symbolClass] = targets[merged][symbolClass].toSortedSet();
+            }
+        }
+
+        IntList startStates = new IntList();
+        for (int state : index.startStates) {
+            if (block[state] >= 0) {
+                startStates.add(order[block[state]]);
+            }
+        }
+
+        return new AutomatonIndex(index, names, accepting, startStates.toSortedSet(), successors);
+    }
+
+    private static int[][][] reverse(int[][][] successors, int stateCount, int classCount) {
+        IntList[][] lists = new IntList[stateCount][classCount];
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                for (int target : successors[state][symbolClass]) {
+                    if (lists[target][symbolClass] == null) {
+                        lists[target][symbolClass] = new IntList();
+                    }
+                    lists[target][symbolClass].add(state);
+                }
+            }
+        }
+
+        int[][][] predecessors = new int[stateCount][classCount][];
+        for (int state = 0; state < stateCount; state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                predecessors[state][symbolClass] = lists[state][symbolClass] == null ? NO_STATES : lists[state][symbolClass].toArray();
+            }
+        }
+        return predecessors;
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return size == 0 ? NO_STATES : Arrays.copyOf(values, size);
+        }
+
+        int[] toSortedSet() {
+            int[] sorted = toArray();
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct);
+        }
+    }
+
+    private static class Signature {
+        private final int[] values;
+        private final int hash;
+
+        Signature(int[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Signature && Arrays.equals(values, ((Signature) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
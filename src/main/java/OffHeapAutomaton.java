@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Deterministic automaton whose class map, transition table and accept set live outside
+// the Java heap, either in direct buffers or read in place from a file mapping in the
+// AutomatonFormat layout. The heap only holds a few buffer objects however many states
+// there are, so a huge automaton adds nothing to garbage collection work. Tables over
+// 1 GB are split into segments because a single buffer is limited to 2 GB.
+public class OffHeapAutomaton implements DeterministicAutomaton {
+
+    private static final int SEGMENT_SHIFT = 28;
+    private static final int SEGMENT_INTS = 1 << SEGMENT_SHIFT;
+
+    private final int stateCount;
+    private final int classCount;
+    private final int startState;
+    private final CharBuffer classMap;
+    private final IntBuffer[] table;
+    private final LongBuffer accepting;
+    private final long memoryBytes;
+
+    private OffHeapAutomaton(AutomatonFormat.Header header, CharBuffer classMap, IntBuffer[] table, LongBuffer accepting) {
+        this.stateCount = header.stateCount;
+        this.classCount = header.classCount;
+        this.startState = header.startState;
+        this.classMap = classMap;
+        this.table = table;
+        this.accepting = accepting;
+
+        long bytes = 2L * classMap.capacity() + 8L * accepting.capacity();
+        for (IntBuffer segment : table) {
+            bytes += 4L * segment.capacity();
+        }
+        this.memoryBytes = bytes;
+    }
+
+    public static OffHeapAutomaton copyOf(CompiledAutomaton automaton) {
+        int classMapLength = AutomatonFormat.classMapLength(automaton);
+        AutomatonFormat.Header header = new AutomatonFormat.Header(0, automaton.getStateCount(), automaton.getClassCount(), classMapLength, automaton.getStartState());
+
+        CharBuffer classMap = allocate(2L * classMapLength).asCharBuffer();
+        for (int c = 0; c < classMapLength; c++) {
+            classMap.put(c, (char) automaton.classOf((char) c));
+        }
+
+        long entries = (long) header.stateCount * header.classCount;
+        IntBuffer[] table = new IntBuffer[segmentCount(entries)];
+        for (int segment = 0; segment < table.length; segment++) {
+            table[segment] = allocate(4L * segmentLength(entries, segment)).asIntBuffer();
+        }
+        for (int state = 0; state < header.stateCount; state++) {
+            for (int symbolClass = 0; symbolClass < header.classCount; symbolClass++) {
+                long index = (long) state * header.classCount + symbolClass;
+                table[(int) (index >>> SEGMENT_SHIFT)].put((int) index & (SEGMENT_INTS - 1), automaton.target(state, symbolClass));
+            }
+        }
+
+        LongBuffer accepting = allocate(8L * header.acceptWords()).asLongBuffer();
+        for (int state = 0; state < header.stateCount; state++) {
+            if (automaton.isAccepting(state)) {
+                accepting.put(state >>> 6, accepting.get(state >>> 6) | (1L << state));
+            }
+        }
+
+        return new OffHeapAutomaton(header, classMap, table, accepting);
+    }
+
+    // Maps a file written by CompiledAutomaton.save and reads it in place. The mapping stays
+    // valid after the channel is closed. The table is read through once to check its targets,
+    // so a corrupt file fails here and not somewhere in the middle of a match.
+    public static OffHeapAutomaton map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            AutomatonFormat.Header header = AutomatonFormat.Header.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, AutomatonFormat.HEADER_BYTES)));
+            if (size < header.namesOffset) {
+                throw new IOException("Truncated compiled automaton file");
+            }
+
+            CharBuffer classMap = AutomatonFormat.map(channel, header.classMapOffset, 2L * header.classMapLength).asCharBuffer();
+            for (int c = 0; c < header.classMapLength; c++) {
+                if (classMap.get(c) >= header.classCount) {
+                    throw new IOException("Corrupt class map at char " + c);
+                }
+            }
+
+            long entries = (long) header.stateCount * header.classCount;
+            IntBuffer[] table = new IntBuffer[segmentCount(entries)];
+            for (int segment = 0; segment < table.length; segment++) {
+                long offset = header.tableOffset + 4L * ((long) segment << SEGMENT_SHIFT);
+                table[segment] = AutomatonFormat.map(channel, offset, 4L * segmentLength(entries, segment)).asIntBuffer();
+                for (int i = 0, length = table[segment].limit(); i < length; i++) {
+                    int target = table[segment].get(i);
+                    if (target < DEAD_STATE || target >= header.stateCount) {
+                        throw new IOException("Corrupt transition table, target state " + target);
+                    }
+                }
+            }
+
+            LongBuffer accepting = AutomatonFormat.map(channel, header.acceptOffset, 8L * header.acceptWords()).asLongBuffer();
+            return new OffHeapAutomaton(header, classMap, table, accepting);
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        if (table.length != 1) {
+            return DeterministicAutomaton.super.matches(input);
+        }
+
+        IntBuffer transitions = table[0];
+        int state = startState;
+        for (int i = 0, length = input.length(); i < length; i++) {
+            state = transitions.get(state * classCount + classOf(input.charAt(i)));
+            if (state == DEAD_STATE) {
+                return false;
+            }
+        }
+        return isAccepting(state);
+    }
+
+    @Override
+    public int step(int state, char c) {
+        long index = (long) state * classCount + classOf(c);
+        return table[(int) (index >>> SEGMENT_SHIFT)].get((int) index & (SEGMENT_INTS - 1));
+    }
+
+    @Override
+    public boolean isAccepting(int state) {
+        return state != DEAD_STATE && (accepting.get(state >>> 6) & (1L << state)) != 0;
+    }
+
+    @Override
+    public int classOf(char c) {
+        return c < classMap.limit() ? classMap.get(c) : 0;
+    }
+
+    @Override
+    public int getStartState() {
+        return startState;
+    }
+
+    @Override
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int getClassCount() {
+        return classCount;
+    }
+
+    // Off-heap bytes of the class map, table and accept set, the heap part is a few objects
+    @Override
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    private static int segmentCount(long entries) {
+        return (int) Math.max(1, (entries + SEGMENT_INTS - 1) >>> SEGMENT_SHIFT);
+    }
+
+    private static int segmentLength(long entries, int segment) {
+        return (int) Math.min(SEGMENT_INTS, entries - ((long) segment << SEGMENT_SHIFT));
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
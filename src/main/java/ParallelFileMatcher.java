@@ -0,0 +1,226 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+// Matches one large file against a DFA on all cores. The file is cut into chunks, and the
+// effect of each chunk is a function from the state it starts in to the state it ends in.
+// Those functions are computed in parallel and composed in order, which is valid because
+// running a DFA over concatenated inputs composes associatively.
+class ParallelFileMatcher {
+
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final DeterministicAutomaton automaton;
+    private final FileChannel channel;
+    private final Charset charset;
+
+    private ParallelFileMatcher(DeterministicAutomaton automaton, FileChannel channel, Charset charset) {
+        this.automaton = automaton;
+        this.channel = channel;
+        this.charset = charset;
+    }
+
+    static boolean matches(DeterministicAutomaton automaton, Path file, Charset charset, ForkJoinPool pool) throws IOException {
+        boolean utf8 = charset.equals(StandardCharsets.UTF_8);
+        if (!utf8 && charset.newEncoder().maxBytesPerChar() != 1) {
+            throw new IllegalArgumentException("Chunked matching needs UTF-8 or a single-byte charset, got " + charset);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ParallelFileMatcher matcher = new ParallelFileMatcher(automaton, channel, charset);
+            long[] boundaries = matcher.chunkBoundaries(pool.getParallelism(), utf8);
+
+            List<ForkJoinTask<int[]>> chunks = new ArrayList<>();
+            for (int chunk = 0; chunk + 1 < boundaries.length; chunk++) {
+                chunks.add(pool.submit(matcher.new ChunkTask(boundaries[chunk], boundaries[chunk + 1], chunk == 0)));
+            }
+
+            int state = automaton.getStartState();
+            for (ForkJoinTask<int[]> chunk : chunks) {
+                state = chunk.join()[state];
+                if (state == DeterministicAutomaton.DEAD_STATE) {
+                    chunks.forEach(task -> task.cancel(false));
+                    return false;
+                }
+            }
+            return automaton.isAccepting(state);
+        } catch (UncheckedChunkException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Chunk boundaries never split a UTF-8 sequence, a boundary is moved past continuation bytes
+    private long[] chunkBoundaries(int parallelism, boolean utf8) throws IOException {
+        long size = channel.size();
+        long chunkCount = Math.max(1, Math.min(parallelism * CHUNKS_PER_WORKER, size / MIN_CHUNK_BYTES));
+        chunkCount = Math.max(chunkCount, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+
+        long[] boundaries = new long[(int) chunkCount + 1];
+        ByteBuffer peek = ByteBuffer.allocate(4);
+        for (int chunk = 1; chunk < chunkCount; chunk++) {
+            long boundary = Math.max(boundaries[chunk - 1], size * chunk / chunkCount);
+            if (utf8) {
+                while (boundary < size) {
+                    peek.clear();
+                    channel.read(peek, boundary);
+                    int skipped = 0;
+                    while (skipped < peek.position() && (peek.get(skipped) & 0xC0) == 0x80) {
+                        skipped++;
+                    }
+                    boundary += skipped;
+                    if (skipped < peek.position()) {
+                        break;
+                    }
+                }
+            }
+            boundaries[chunk] = Math.min(boundary, size);
+        }
+        boundaries[(int) chunkCount] = size;
+
+        return boundaries;
+    }
+
+    private class ChunkTask extends RecursiveTask<int[]> {
+        private final long from;
+        private final long to;
+        private final boolean fromStartOnly;
+
+        // Every start state is followed as a group, groups that meet in the same state are
+        // merged with a union-find, so the work per character shrinks as paths synchronize.
+        private final int[] parent;
+        private final int[] groups;
+        private final int[] groupStates;
+        private final int[] ownerOf;
+        private final int[] stamps;
+        private int groupCount;
+        private int stamp;
+
+        ChunkTask(long from, long to, boolean fromStartOnly) {
+            this.from = from;
+            this.to = to;
+            this.fromStartOnly = fromStartOnly;
+
+            int stateCount = automaton.getStateCount();
+            this.parent = new int[stateCount];
+            this.groups = new int[stateCount];
+            this.groupStates = new int[stateCount];
+            this.ownerOf = new int[stateCount];
+            this.stamps = new int[stateCount];
+        }
+
+        @Override
+        protected int[] compute() {
+            int stateCount = automaton.getStateCount();
+            for (int state = 0; state < stateCount; state++) {
+                parent[state] = state;
+                if (!fromStartOnly || state == automaton.getStartState()) {
+                    groups[groupCount] = state;
+                    groupStates[groupCount++] = state;
+                }
+            }
+
+            try {
+                decodeChunk();
+            } catch (IOException e) {
+                throw new UncheckedChunkException(e);
+            }
+
+            int[] finalStates = new int[stateCount];
+            int[] rootStates = new int[stateCount];
+            Arrays.fill(rootStates, DeterministicAutomaton.DEAD_STATE);
+            for (int i = 0; i < groupCount; i++) {
+                rootStates[groups[i]] = groupStates[i];
+            }
+            for (int state = 0; state < stateCount; state++) {
+                finalStates[state] = rootStates[find(state)];
+            }
+            return finalStates;
+        }
+
+        private void decodeChunk() throws IOException {
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            CharBuffer chars = CharBuffer.allocate(AutomatonMatcher.BUFFER_SIZE);
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+
+            while (groupCount > 0 && !isCancelled()) {
+                CoderResult result = decoder.decode(bytes, chars, true);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (result.isUnderflow()) {
+                    decoder.flush(chars);
+                }
+
+                chars.flip();
+                while (chars.hasRemaining() && groupCount > 0) {
+                    step(chars.get());
+                }
+                chars.clear();
+
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+        }
+
+        private void step(char symbol) {
+            int kept = 0;
+            stamp++;
+
+            for (int i = 0; i < groupCount; i++) {
+                int next = automaton.step(groupStates[i], symbol);
+                if (next == DeterministicAutomaton.DEAD_STATE) {
+                    continue;
+                }
+
+                if (stamps[next] == stamp) {
+                    parent[groups[i]] = ownerOf[next];
+                } else {
+                    stamps[next] = stamp;
+                    ownerOf[next] = groups[i];
+                    groups[kept] = groups[i];
+                    groupStates[kept++] = next;
+                }
+            }
+
+            groupCount = kept;
+        }
+
+        private int find(int state) {
+            while (parent[state] != state) {
+                parent[state] = parent[parent[state]];
+                state = parent[state];
+            }
+            return state;
+        }
+    }
+
+    private static class UncheckedChunkException extends RuntimeException {
+        UncheckedChunkException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+// All parse trees of a string as a shared packed parse forest. A symbol node stands for a
+// non-terminal or terminal deriving the substring from start to end, and every family of a
+// node is one way to derive it. Families have at most two children: a rule with longer
+// right hand side is split into an intermediate node for all of it but the last symbol and
+// the node of that symbol, so rules of any length keep the forest cubic in the input.
+// Subtrees are shared between all trees they occur in, so an ambiguous input with
+// exponentially many trees still has a small forest. Grammars with cycles of unit or
+// empty rules give forests with cycles, which stand for infinitely many trees.
+public class ParseForest {
+
+    public enum Kind { SYMBOL, INTERMEDIATE, TERMINAL }
+
+    public static class Node {
+        private final int id;
+        private final String label;
+        private final Kind kind;
+        private final int start;
+        private final int end;
+        final List<List<Node>> families = new ArrayList<>(1);
+
+        Node(int id, String label, Kind kind, int start, int end) {
+            this.id = id;
+            this.label = label;
+            this.kind = kind;
+            this.start = start;
+            this.end = end;
+        }
+
+        // The symbol, or the rule with its dot for intermediate nodes
+        public String getLabel() {
+            return label;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public List<List<Node>> getFamilies() {
+            return Collections.unmodifiableList(families);
+        }
+
+        @Override
+        public String toString() {
+            return label + "[" + start + ", " + end + ")";
+        }
+    }
+
+    private final Node root;
+    private final List<Node> nodes;
+
+    ParseForest(Node root, List<Node> nodes) {
+        this.root = root;
+        this.nodes = nodes;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    public boolean isAmbiguous() {
+        for (Node node : nodes) {
+            if (node.families.size() > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Throws IllegalStateException when the forest has a cycle, and so infinitely many trees
+    public BigInteger countTrees() {
+        BigInteger[] counts = new BigInteger[nodes.size()];
+        boolean[] open = new boolean[nodes.size()];
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+
+        // Depth first, a node is counted when it comes up again after all its children
+        while (!pending.isEmpty()) {
+            Node node = pending.peek();
+            if (counts[node.id] != null) {
+                pending.pop();
+                continue;
+            }
+            if (!open[node.id]) {
+                open[node.id] = true;
+                for (List<Node> family : node.families) {
+                    for (Node child : family) {
+                        if (counts[child.id] == null) {
+                            if (open[child.id]) {
+                                throw new IllegalStateException("The forest has a cycle at " + child + ", so it has infinitely many trees.");
+                            }
+                            pending.push(child);
+                        }
+                    }
+                }
+                continue;
+            }
+
+            BigInteger count = node.kind == Kind.TERMINAL ? BigInteger.ONE : BigInteger.ZERO;
+            for (List<Node> family : node.families) {
+                BigInteger product = BigInteger.ONE;
+                for (Node child : family) {
+                    product = product.multiply(counts[child.id]);
+                }
+                count = count.add(product);
+            }
+            counts[node.id] = count;
+            open[node.id] = false;
+            pending.pop();
+        }
+        return counts[root.id];
+    }
+
+    // One of the trees, and never one that goes around a cycle. Families are picked bottom up:
+    // a node gets the first family whose children all have one already, which is found for
+    // every node in time linear in the forest.
+    public ParseTree anyTree() {
+        int[] chosen = chooseFamilies();
+
+        List<ParseTree> result = new ArrayList<>(1);
+        Deque<Node> pending = new ArrayDeque<>();
+        Deque<List<ParseTree>> parents = new ArrayDeque<>();
+        pending.push(root);
+        parents.push(result);
+        List<Node> symbols = new ArrayList<>();
+
+        // Children are added to their parent when they are taken from the stack, so they are pushed in reverse
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            List<ParseTree> siblings = parents.pop();
+            if (node.kind == Kind.TERMINAL) {
+                siblings.add(ParseTree.leaf(node.label));
+                continue;
+            }
+
+            List<ParseTree> children = new ArrayList<>();
+            siblings.add(ParseTree.node(node.label, children));
+            symbols.clear();
+            flatten(node.families.get(chosen[node.id]), chosen, symbols);
+            for (int i = symbols.size() - 1; i >= 0; i--) {
+                pending.push(symbols.get(i));
+                parents.push(children);
+            }
+        }
+        return result.get(0);
+    }
+
+    private int[] chooseFamilies() {
+        int[] chosen = new int[nodes.size()];
+        Arrays.fill(chosen, -1);
+
+        // Every family gets an id, with the number of its children that have no family yet
+        int familyCount = 0;
+        for (Node node : nodes) {
+            familyCount += node.families.size();
+        }
+        int[] familyNode = new int[familyCount];
+        int[] familyIndex = new int[familyCount];
+        int[] missing = new int[familyCount];
+        int[] parentCounts = new int[nodes.size() + 1];
+        int family = 0;
+        for (Node node : nodes) {
+            for (int i = 0; i < node.families.size(); i++) {
+                familyNode[family] = node.id;
+                familyIndex[family] = i;
+                missing[family] = node.families.get(i).size();
+                for (Node child : node.families.get(i)) {
+                    parentCounts[child.id + 1]++;
+                }
+                family++;
+            }
+        }
+
+        // The families every node is a child of, as slices of one array
+        for (int i = 0; i < nodes.size(); i++) {
+            parentCounts[i + 1] += parentCounts[i];
+        }
+        int[] parents = new int[parentCounts[nodes.size()]];
+        int[] fill = Arrays.copyOf(parentCounts, nodes.size());
+        family = 0;
+        for (Node node : nodes) {
+            for (List<Node> children : node.families) {
+                for (Node child : children) {
+                    parents[fill[child.id]++] = family;
+                }
+                family++;
+            }
+        }
+
+        int[] queue = new int[nodes.size()];
+        int head = 0;
+        int tail = 0;
+        for (Node node : nodes) {
+            if (node.kind == Kind.TERMINAL) {
+                queue[tail++] = node.id;
+            }
+        }
+        for (family = 0; family < familyCount; family++) {
+            if (missing[family] == 0 && chosen[familyNode[family]] == -1) {
+                chosen[familyNode[family]] = familyIndex[family];
+                queue[tail++] = familyNode[family];
+            }
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int i = parentCounts[node]; i < parentCounts[node + 1]; i++) {
+                int parent = parents[i];
+                if (--missing[parent] == 0 && chosen[familyNode[parent]] == -1) {
+                    chosen[familyNode[parent]] = familyIndex[parent];
+                    queue[tail++] = familyNode[parent];
+                }
+            }
+        }
+        return chosen;
+    }
+
+    // The symbol and terminal nodes of a family, with the intermediate nodes opened up
+    private void flatten(List<Node> family, int[] chosen, List<Node> into) {
+        for (Node child : family) {
+            if (child.kind == Kind.INTERMEDIATE) {
+                flatten(child.families.get(chosen[child.id]), chosen, into);
+            } else {
+                into.add(child);
+            }
+        }
+    }
+}
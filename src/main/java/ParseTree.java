@@ -0,0 +1,74 @@
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+// A derivation of a string: inner nodes are non-terminals with the symbols of the
+// production they were expanded by as children, leaves are terminals. A non-terminal
+// expanded by an empty production is an inner node without children.
+public class ParseTree {
+
+    private final String symbol;
+    private final boolean terminal;
+    private final List<ParseTree> children;
+
+    private ParseTree(String symbol, boolean terminal, List<ParseTree> children) {
+        this.symbol = symbol;
+        this.terminal = terminal;
+        this.children = children;
+    }
+
+    public static ParseTree leaf(String terminal) {
+        return new ParseTree(terminal, true, Collections.emptyList());
+    }
+
+    // The children are wrapped, not copied, so a parser may still add to them while it builds the tree
+    public static ParseTree node(String nonTerminal, List<ParseTree> children) {
+        return new ParseTree(nonTerminal, false, Collections.unmodifiableList(children));
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public boolean isTerminal() {
+        return terminal;
+    }
+
+    public List<ParseTree> getChildren() {
+        return children;
+    }
+
+    // The derived string, the terminals of the leaves from left to right
+    public String getYield() {
+        StringBuilder result = new StringBuilder();
+        Deque<ParseTree> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            ParseTree tree = pending.pop();
+            if (tree.terminal) {
+                result.append(tree.symbol);
+            }
+            for (int i = tree.children.size() - 1; i >= 0; i--) {
+                pending.push(tree.children.get(i));
+            }
+        }
+        return result.toString();
+    }
+
+    // Bracketed form, e.g. S(X1(a), X2(b)), with S() for an empty production
+    @Override
+    public String toString() {
+        if (terminal) {
+            return symbol;
+        }
+        StringBuilder result = new StringBuilder(symbol).append('(');
+        for (int i = 0; i < children.size(); i++) {
+            if (i > 0) {
+                result.append(", ");
+            }
+            result.append(children.get(i));
+        }
+        return result.append(')').toString();
+    }
+}
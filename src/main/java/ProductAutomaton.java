@@ -0,0 +1,312 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+// Boolean combination of two deterministic automata by the product construction, built
+// lazily: a product state (left state, right state) and its transitions are only created
+// when matching or an emptiness check reaches them, so the usually small reachable part
+// of the |A|*|B| product is all that is ever built. The alphabet is the union of both
+// alphabets; a side without a transition on a character drops into its dead state.
+// Complement is the unary case and is taken relative to the operand's own alphabet.
+// The caches are not synchronized, materialize() gives a table that can be shared.
+public class ProductAutomaton implements DeterministicAutomaton {
+
+    public enum Operation {
+        INTERSECTION, UNION, DIFFERENCE, COMPLEMENT;
+
+        boolean accepts(boolean left, boolean right) {
+            return switch (this) {
+                case INTERSECTION -> left && right;
+                case UNION -> left || right;
+                case DIFFERENCE -> left && !right;
+                case COMPLEMENT -> !left;
+            };
+        }
+    }
+
+    private static final int UNKNOWN = -2;
+
+    private final DeterministicAutomaton left;
+    private final DeterministicAutomaton right;
+    private final Operation operation;
+
+    // Product classes are the distinct (left class, right class) pairs over all chars
+    private final char[] charClasses = new char[Character.MAX_VALUE + 1];
+    private final char[] representatives;
+    private final int classCount;
+
+    // Pairs are interned as one packed long each
+    private final StateSetTable states = new StateSetTable(1);
+    private final long[] pair = new long[1];
+    private int[] transitions;
+    private boolean[] accepting;
+    private final int startState;
+
+    private ProductAutomaton(DeterministicAutomaton left, DeterministicAutomaton right, Operation operation) {
+        this.left = left;
+        this.right = right;
+        this.operation = operation;
+
+        this.representatives = right == null
+                ? jointClasses(left::classOf, c -> 0, charClasses)
+                : jointClasses(left::classOf, right::classOf, charClasses);
+        this.classCount = representatives.length;
+
+        this.transitions = new int[16 * classCount];
+        Arrays.fill(transitions, UNKNOWN);
+        this.accepting = new boolean[16];
+        this.startState = intern(left.getStartState(), right == null ? DEAD_STATE : right.getStartState());
+    }
+
+    // Numbers the distinct (left class, right class) pairs over all chars into charClasses,
+    // with the pair of two class 0s as class 0, and returns a char of every joint class.
+    // Only the pairs that occur are stored, at most one per char however many classes there are.
+    static char[] jointClasses(CharClassifier left, CharClassifier right, char[] charClasses) {
+        LongIntTable pairIds = new LongIntTable(256);
+        StringBuilder representatives = new StringBuilder("\0");
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            long key = (long) left.classOf((char) c) << 32 | right.classOf((char) c);
+            int id = key == 0 ? 0 : pairIds.get(key);
+            if (id == LongIntTable.MISSING) {
+                id = representatives.length();
+                if (id > Character.MAX_VALUE) {
+                    throw new IllegalArgumentException("Too many distinct symbol classes: " + (id + 1));
+                }
+                pairIds.put(key, id);
+                representatives.append((char) c);
+            }
+            charClasses[c] = (char) id;
+        }
+        return representatives.toString().toCharArray();
+    }
+
+    interface CharClassifier {
+        int classOf(char c);
+    }
+
+    public static ProductAutomaton intersection(DeterministicAutomaton left, DeterministicAutomaton right) {
+        return new ProductAutomaton(left, right, Operation.INTERSECTION);
+    }
+
+    public static ProductAutomaton union(DeterministicAutomaton left, DeterministicAutomaton right) {
+        return new ProductAutomaton(left, right, Operation.UNION);
+    }
+
+    public static ProductAutomaton difference(DeterministicAutomaton left, DeterministicAutomaton right) {
+        return new ProductAutomaton(left, right, Operation.DIFFERENCE);
+    }
+
+    public static ProductAutomaton complement(DeterministicAutomaton automaton) {
+        return new ProductAutomaton(automaton, null, Operation.COMPLEMENT);
+    }
+
+    public ProductAutomaton intersect(DeterministicAutomaton other) {
+        return intersection(this, other);
+    }
+
+    public ProductAutomaton union(DeterministicAutomaton other) {
+        return union(this, other);
+    }
+
+    public ProductAutomaton minus(DeterministicAutomaton other) {
+        return difference(this, other);
+    }
+
+    public ProductAutomaton complement() {
+        return complement(this);
+    }
+
+    @Override
+    public int step(int state, char c) {
+        if (state == DEAD_STATE) {
+            return DEAD_STATE;
+        }
+
+        int symbolClass = charClasses[c];
+        int next = transitions[state * classCount + symbolClass];
+        return next != UNKNOWN ? next : computeTransition(state, symbolClass);
+    }
+
+    @Override
+    public boolean isAccepting(int state) {
+        return state != DEAD_STATE && accepting[state];
+    }
+
+    public boolean isEmpty() {
+        return findAcceptedString().isEmpty();
+    }
+
+    // Breadth-first search over the product, stopping at the first accepting state it
+    // reaches, so the witness is a shortest string of the language
+    public Optional<String> findAcceptedString() {
+        if (startState == DEAD_STATE) {
+            return Optional.empty();
+        }
+
+        int[] parents = new int[16];
+        char[] via = new char[16];
+        boolean[] seen = new boolean[16];
+        int[] queue = new int[16];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = startState;
+        seen[startState] = true;
+
+        while (head < tail) {
+            int state = queue[head++];
+            if (accepting[state]) {
+                StringBuilder witness = new StringBuilder();
+                for (int current = state; current != startState; current = parents[current]) {
+                    witness.append(via[current]);
+                }
+                return Optional.of(witness.reverse().toString());
+            }
+
+            for (int symbolClass = 1; symbolClass < classCount; symbolClass++) {
+                int next = step(state, representatives[symbolClass]);
+                if (next == DEAD_STATE) {
+                    continue;
+                }
+
+                if (next >= seen.length) {
+                    int capacity = Math.max(next + 1, seen.length * 2);
+                    parents = Arrays.copyOf(parents, capacity);
+                    via = Arrays.copyOf(via, capacity);
+                    seen = Arrays.copyOf(seen, capacity);
+                    queue = Arrays.copyOf(queue, capacity);
+                }
+                if (!seen[next]) {
+                    seen[next] = true;
+                    parents[next] = state;
+                    via[next] = representatives[symbolClass];
+                    queue[tail++] = next;
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    // Explores every reachable product state and copies the result into a dense table
+    public CompiledAutomaton materialize() {
+        if (startState == DEAD_STATE) {
+            return emptyAutomaton();
+        }
+
+        for (int state = 0; state < states.size(); state++) {
+            for (int symbolClass = 0; symbolClass < classCount; symbolClass++) {
+                if (transitions[state * classCount + symbolClass] == UNKNOWN) {
+                    computeTransition(state, symbolClass);
+                }
+            }
+        }
+
+        int count = states.size();
+        return new CompiledAutomaton(null, alphabet(), charClasses, classCount, Arrays.copyOf(transitions, count * classCount), Arrays.copyOf(accepting, count), startState);
+    }
+
+    public CompiledAutomaton minimize() {
+        return materialize().minimize();
+    }
+
+    public FiniteAutomaton toFiniteAutomaton() {
+        return materialize().toFiniteAutomaton();
+    }
+
+    // The chunks of a file are matched on several threads, which the lazy caches do not allow
+    @Override
+    public boolean matches(Path file, Charset charset, ForkJoinPool pool) throws IOException {
+        return materialize().matches(file, charset, pool);
+    }
+
+    @Override
+    public int classOf(char c) {
+        return charClasses[c];
+    }
+
+    @Override
+    public int getClassCount() {
+        return classCount;
+    }
+
+    @Override
+    public int getStartState() {
+        return startState;
+    }
+
+    // Counts the product states built so far
+    @Override
+    public int getStateCount() {
+        return states.size();
+    }
+
+    @Override
+    public long getMemoryBytes() {
+        return states.memoryBytes() + (long) transitions.length * Integer.BYTES + accepting.length
+                + (long) charClasses.length * Character.BYTES;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    private int computeTransition(int state, int symbolClass) {
+        states.get(state, pair);
+        int leftState = (int) (pair[0] >> 32);
+        int rightState = (int) pair[0];
+        char c = representatives[symbolClass];
+
+        int next = symbolClass == 0 ? DEAD_STATE : intern(
+                leftState == DEAD_STATE ? DEAD_STATE : left.step(leftState, c),
+                rightState == DEAD_STATE ? DEAD_STATE : right.step(rightState, c));
+        transitions[state * classCount + symbolClass] = next;
+        return next;
+    }
+
+    // A pair is dead when no future acceptance of its live sides can make the operation true
+    private int intern(int leftState, int rightState) {
+        boolean leftDead = leftState == DEAD_STATE;
+        boolean rightDead = rightState == DEAD_STATE;
+        boolean canAccept = false;
+        for (int outcome = 0; outcome < 4; outcome++) {
+            boolean leftAccepts = (outcome & 1) != 0;
+            boolean rightAccepts = (outcome & 2) != 0;
+            if ((!leftDead || !leftAccepts) && (!rightDead || !rightAccepts)) {
+                canAccept |= operation.accepts(leftAccepts, rightAccepts);
+            }
+        }
+        if (!canAccept) {
+            return DEAD_STATE;
+        }
+
+        pair[0] = ((long) leftState << 32) | (rightState & 0xFFFFFFFFL);
+        int id = states.intern(pair);
+        if (id == accepting.length) {
+            transitions = Arrays.copyOf(transitions, accepting.length * 2 * classCount);
+            Arrays.fill(transitions, accepting.length * classCount, transitions.length, UNKNOWN);
+            accepting = Arrays.copyOf(accepting, accepting.length * 2);
+        }
+        accepting[id] = operation.accepts(left.isAccepting(leftState), right != null && right.isAccepting(rightState));
+        return id;
+    }
+
+    private char[] alphabet() {
+        StringBuilder alphabet = new StringBuilder();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (charClasses[c] != 0) {
+                alphabet.append((char) c);
+            }
+        }
+        return alphabet.toString().toCharArray();
+    }
+
+    // A single non-accepting state without transitions
+    private CompiledAutomaton emptyAutomaton() {
+        int[] table = new int[classCount];
+        Arrays.fill(table, DEAD_STATE);
+        return new CompiledAutomaton(null, alphabet(), charClasses, classCount, table, new boolean[1], 0);
+    }
+}
@@ -0,0 +1,380 @@
+import java.util.*;
+
+// Compiles a regular expression into a FiniteAutomaton by Thompson's construction.
+// Supported syntax: concatenation, alternation (|), grouping, the *, + and ? operators,
+// counted repetition ({n}, {n,} and {n,m}), the dot, character classes with ranges and
+// negation ([a-z], [^0-9]), the shorthands \d, \w and \s, and backslash escapes.
+// The dot and negated classes are taken relative to a universe of characters, printable
+// ASCII by default. The result has epsilon moves and goes through the usual pipeline:
+// compile(), minimize() or the NFA engines.
+public class RegexCompiler {
+
+    public static final String DEFAULT_UNIVERSE = printableAscii();
+
+    private final String pattern;
+    private final char[] universe;
+    private int position;
+
+    private final Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+    private final Set<String> alphabet = new HashSet<>();
+    private int stateCount;
+
+    private RegexCompiler(String pattern, String universe) {
+        this.pattern = pattern;
+        this.universe = distinctSorted(universe.toCharArray());
+    }
+
+    public static FiniteAutomaton compile(String pattern) {
+        return compile(pattern, DEFAULT_UNIVERSE);
+    }
+
+    public static FiniteAutomaton compile(String pattern, String universe) {
+        RegexCompiler compiler = new RegexCompiler(pattern, universe);
+        Node root = compiler.parseAlternation();
+        if (compiler.position < pattern.length()) {
+            throw compiler.error("Unexpected '" + pattern.charAt(compiler.position) + "'");
+        }
+
+        int[] fragment = compiler.build(root);
+        Set<String> states = new HashSet<>();
+        for (int state = 0; state < compiler.stateCount; state++) {
+            states.add(stateName(state));
+        }
+
+        return new FiniteAutomaton(states, compiler.alphabet, compiler.transitions, stateName(fragment[0]), Set.of(stateName(fragment[1])));
+    }
+
+    // Parsing
+
+    private Node parseAlternation() {
+        List<Node> alternatives = new ArrayList<>();
+        alternatives.add(parseConcatenation());
+
+        while (peek() == '|') {
+            position++;
+            alternatives.add(parseConcatenation());
+        }
+
+        return alternatives.size() == 1 ? alternatives.get(0) : new Node(NodeType.ALTERNATION, alternatives);
+    }
+
+    private Node parseConcatenation() {
+        List<Node> parts = new ArrayList<>();
+
+        while (position < pattern.length() && peek() != '|' && peek() != ')') {
+            parts.add(parseRepetition());
+        }
+
+        if (parts.isEmpty()) {
+            return new Node(NodeType.EMPTY, Collections.emptyList());
+        }
+        return parts.size() == 1 ? parts.get(0) : new Node(NodeType.CONCATENATION, parts);
+    }
+
+    private Node parseRepetition() {
+        Node node = parseAtom();
+
+        while (position < pattern.length()) {
+            char c = peek();
+            if (c == '*') {
+                node = Node.repeat(node, 0, -1);
+            } else if (c == '+') {
+                node = Node.repeat(node, 1, -1);
+            } else if (c == '?') {
+                node = Node.repeat(node, 0, 1);
+            } else if (c == '{') {
+                position++;
+                int min = parseNumber();
+                int max = min;
+                if (peek() == ',') {
+                    position++;
+                    max = peek() == '}' ? -1 : parseNumber();
+                }
+                expect('}');
+                if (max != -1 && max < min) {
+                    throw error("Invalid repetition bounds {" + min + "," + max + "}");
+                }
+                node = Node.repeat(node, min, max);
+                continue;
+            } else {
+                break;
+            }
+            position++;
+        }
+
+        return node;
+    }
+
+    private Node parseAtom() {
+        if (position >= pattern.length()) {
+            throw error("Unexpected end of pattern");
+        }
+
+        char c = pattern.charAt(position++);
+        switch (c) {
+            case '(' -> {
+                Node group = parseAlternation();
+                expect(')');
+                return group;
+            }
+            case '[' -> {
+                return Node.chars(parseClass());
+            }
+            case '.' -> {
+                return Node.chars(universe);
+            }
+            case '\\' -> {
+                return Node.chars(parseEscape());
+            }
+            case ')', '*', '+', '?', '{', '|' -> {
+                position--;
+                throw error("Unexpected '" + c + "'");
+            }
+            default -> {
+                return Node.chars(new char[]{c});
+            }
+        }
+    }
+
+    private char[] parseClass() {
+        boolean negated = peek() == '^';
+        if (negated) {
+            position++;
+        }
+
+        StringBuilder members = new StringBuilder();
+        boolean first = true;
+        while (position < pattern.length() && (peek() != ']' || first)) {
+            first = false;
+            char c = pattern.charAt(position++);
+            if (c == '\\') {
+                char[] escaped = parseEscape();
+                if (escaped.length > 1) {
+                    members.append(escaped);
+                    continue;
+                }
+                c = escaped[0];
+            }
+
+            if (peek() == '-' && position + 1 < pattern.length() && pattern.charAt(position + 1) != ']') {
+                position++;
+                char to = pattern.charAt(position++);
+                if (to == '\\') {
+                    to = parseEscape()[0];
+                }
+                if (to < c) {
+                    throw error("Invalid range " + c + "-" + to);
+                }
+                for (char member = c; member < to; member++) {
+                    members.append(member);
+                }
+                members.append(to);
+            } else {
+                members.append(c);
+            }
+        }
+        expect(']');
+
+        char[] chars = distinctSorted(members.toString().toCharArray());
+        if (!negated) {
+            return chars;
+        }
+
+        StringBuilder complement = new StringBuilder();
+        for (char c : universe) {
+            if (Arrays.binarySearch(chars, c) < 0) {
+                complement.append(c);
+            }
+        }
+        return complement.toString().toCharArray();
+    }
+
+    private char[] parseEscape() {
+        if (position >= pattern.length()) {
+            throw error("Dangling escape");
+        }
+
+        char c = pattern.charAt(position++);
+        return switch (c) {
+            case 'd' -> "0123456789".toCharArray();
+            case 'w' -> "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+            case 's' -> "\t\n\f\r ".toCharArray();
+            case 'n' -> new char[]{'\n'};
+            case 't' -> new char[]{'\t'};
+            case 'r' -> new char[]{'\r'};
+            default -> new char[]{c};
+        };
+    }
+
+    private int parseNumber() {
+        int start = position;
+        while (position < pattern.length() && Character.isDigit(peek())) {
+            position++;
+        }
+        if (start == position) {
+            throw error("Expected a number");
+        }
+        return Integer.parseInt(pattern.substring(start, position));
+    }
+
+    private char peek() {
+        return position < pattern.length() ? pattern.charAt(position) : '\0';
+    }
+
+    private void expect(char c) {
+        if (peek() != c || position >= pattern.length()) {
+            throw error("Expected '" + c + "'");
+        }
+        position++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + position + " in pattern \"" + pattern + "\"");
+    }
+
+    // Thompson's construction, every fragment has one start and one accepting state
+
+    private int[] build(Node node) {
+        switch (node.type) {
+            case EMPTY -> {
+                int start = newState();
+                int end = newState();
+                addTransition(start, FiniteAutomaton.EPSILON, end);
+                return new int[]{start, end};
+            }
+            case CHARS -> {
+                int start = newState();
+                int end = newState();
+                for (char c : node.chars) {
+                    addTransition(start, String.valueOf(c), end);
+                }
+                return new int[]{start, end};
+            }
+            case CONCATENATION -> {
+                int[] first = build(node.children.get(0));
+                int end = first[1];
+                for (int i = 1; i < node.children.size(); i++) {
+                    int[] next = build(node.children.get(i));
+                    addTransition(end, FiniteAutomaton.EPSILON, next[0]);
+                    end = next[1];
+                }
+                return new int[]{first[0], end};
+            }
+            case ALTERNATION -> {
+                int start = newState();
+                int end = newState();
+                for (Node child : node.children) {
+                    int[] alternative = build(child);
+                    addTransition(start, FiniteAutomaton.EPSILON, alternative[0]);
+                    addTransition(alternative[1], FiniteAutomaton.EPSILON, end);
+                }
+                return new int[]{start, end};
+            }
+            default -> {
+                return buildRepetition(node.children.get(0), node.min, node.max);
+            }
+        }
+    }
+
+    private int[] buildRepetition(Node child, int min, int max) {
+        int start = newState();
+        int end = start;
+
+        for (int i = 0; i < min; i++) {
+            int[] copy = build(child);
+            addTransition(end, FiniteAutomaton.EPSILON, copy[0]);
+            end = copy[1];
+        }
+
+        if (max == -1) {
+            int[] loop = build(child);
+            int exit = newState();
+            addTransition(end, FiniteAutomaton.EPSILON, loop[0]);
+            addTransition(end, FiniteAutomaton.EPSILON, exit);
+            addTransition(loop[1], FiniteAutomaton.EPSILON, loop[0]);
+            addTransition(loop[1], FiniteAutomaton.EPSILON, exit);
+            return new int[]{start, exit};
+        }
+
+        int exit = newState();
+        for (int i = min; i < max; i++) {
+            int[] copy = build(child);
+            addTransition(end, FiniteAutomaton.EPSILON, copy[0]);
+            addTransition(end, FiniteAutomaton.EPSILON, exit);
+            end = copy[1];
+        }
+        addTransition(end, FiniteAutomaton.EPSILON, exit);
+        return new int[]{start, exit};
+    }
+
+    private int newState() {
+        return stateCount++;
+    }
+
+    private void addTransition(int from, String symbol, int to) {
+        if (!symbol.equals(FiniteAutomaton.EPSILON)) {
+            alphabet.add(symbol);
+        }
+        transitions.computeIfAbsent(stateName(from), state -> new HashMap<>())
+                .computeIfAbsent(symbol, s -> new HashSet<>())
+                .add(stateName(to));
+    }
+
+    private static String stateName(int state) {
+        return "r" + state;
+    }
+
+    private static char[] distinctSorted(char[] chars) {
+        char[] sorted = chars.clone();
+        Arrays.sort(sorted);
+
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    private static String printableAscii() {
+        StringBuilder builder = new StringBuilder("\t");
+        for (char c = ' '; c <= '~'; c++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private enum NodeType {
+        EMPTY, CHARS, CONCATENATION, ALTERNATION, REPETITION
+    }
+
+    private static class Node {
+        final NodeType type;
+        final List<Node> children;
+        final char[] chars;
+        final int min;
+        final int max;
+
+        Node(NodeType type, List<Node> children) {
+            this(type, children, null, 0, 0);
+        }
+
+        Node(NodeType type, List<Node> children, char[] chars, int min, int max) {
+            this.type = type;
+            this.children = children;
+            this.chars = chars;
+            this.min = min;
+            this.max = max;
+        }
+
+        static Node chars(char[] chars) {
+            return new Node(NodeType.CHARS, Collections.emptyList(), chars, 0, 0);
+        }
+
+        // A max of -1 means unbounded
+        static Node repeat(Node child, int min, int max) {
+            return new Node(NodeType.REPETITION, List.of(child), null, min, max);
+        }
+    }
+}
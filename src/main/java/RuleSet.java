@@ -0,0 +1,264 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+// Matches one input against many automata in a single pass. The rules are kept side by side
+// as one tagged union NFA, every state knows the rule it belongs to, and a lazy DFA is built
+// over it on demand: a DFA state is a set of union states, and its accept information is the
+// set of rule ids with an accepting state in it. Once the states an input visits are cached,
+// matching costs one table lookup per character no matter how many rules there are.
+//
+// Adding a rule appends its states and refines the symbol classes, removing one takes its
+// states out of the start set. Neither touches the other rules, only the DFA cache is
+// dropped and refilled as inputs come in. Removed states are compacted away once they make
+// up half of the union. A RuleSet is not thread-safe.
+public class RuleSet {
+
+    public static final long DEFAULT_CACHE_BYTES = 8L << 20;
+
+    private static final int UNKNOWN = -2;
+    private static final int DEAD = -1;
+    private static final int NO_RULES = -1;
+
+    private final long maxCacheBytes;
+
+    // Union NFA: rule r owns the states from offsets[r] on, removed rules are null
+    private final List<AutomatonIndex> rules = new ArrayList<>();
+    private int[] offsets = new int[16];
+    private int[] ruleOfState = new int[16];
+    private int stateCount;
+    private int removedStateCount;
+    private int activeRuleCount;
+
+    private final char[] charClasses = new char[Character.MAX_VALUE + 1];
+    private char[] representatives = {'\0'};
+
+    // Lazy DFA over the union, rebuilt after every change of the rules
+    private int words;
+    private long[] startMask;
+    private long[] acceptMask;
+    private StateSetTable states;
+    private StateSetTable ruleSets;
+    private int[] transitions;
+    private int[] acceptingRules;
+    private int startState;
+    private long[] current;
+    private long[] next;
+    private long[] ruleBits;
+
+    public RuleSet() {
+        this(DEFAULT_CACHE_BYTES);
+    }
+
+    public RuleSet(long maxCacheBytes) {
+        this.maxCacheBytes = maxCacheBytes;
+        resetCache();
+    }
+
+    // Returns the id of the new rule, ids are never reused
+    public int add(FiniteAutomaton rule) {
+        AutomatonIndex index = new AutomatonIndex(rule);
+        int ruleId = rules.size();
+
+        if (ruleId == offsets.length) {
+            offsets = Arrays.copyOf(offsets, ruleId * 2);
+        }
+        offsets[ruleId] = stateCount;
+        ensureStateCapacity(stateCount + index.stateCount());
+        Arrays.fill(ruleOfState, stateCount, stateCount + index.stateCount(), ruleId);
+        stateCount += index.stateCount();
+        rules.add(index);
+        activeRuleCount++;
+
+        char[] joint = new char[Character.MAX_VALUE + 1];
+        representatives = ProductAutomaton.jointClasses(c -> charClasses[c], c -> index.charClasses[c], joint);
+        System.arraycopy(joint, 0, charClasses, 0, joint.length);
+
+        resetCache();
+        return ruleId;
+    }
+
+    public void remove(int ruleId) {
+        if (ruleId < 0 || ruleId >= rules.size() || rules.get(ruleId) == null) {
+            throw new IllegalArgumentException("No rule with id " + ruleId);
+        }
+
+        removedStateCount += rules.get(ruleId).stateCount();
+        rules.set(ruleId, null);
+        activeRuleCount--;
+
+        if (removedStateCount * 2 > stateCount) {
+            compact();
+        }
+        resetCache();
+    }
+
+    // Ids of all rules that accept the whole input
+    public BitSet match(CharSequence input) {
+        int state = startState;
+
+        for (int i = 0, length = input.length(); i < length && state != DEAD; i++) {
+            int symbolClass = charClasses[input.charAt(i)];
+            int target = transitions[state * representatives.length + symbolClass];
+            state = target != UNKNOWN ? target : computeTransition(state, symbolClass);
+        }
+
+        BitSet result = new BitSet();
+        if (state != DEAD && acceptingRules[state] != NO_RULES) {
+            ruleSets.get(acceptingRules[state], ruleBits);
+            for (int word = 0; word < ruleBits.length; word++) {
+                for (long bits = ruleBits[word]; bits != 0; bits &= bits - 1) {
+                    result.set((word << 6) | Long.numberOfTrailingZeros(bits));
+                }
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return activeRuleCount;
+    }
+
+    public int getCachedStateCount() {
+        return states.size();
+    }
+
+    public int getStateCount() {
+        return stateCount - removedStateCount;
+    }
+
+    private int computeTransition(int state, int symbolClass) {
+        states.get(state, current);
+        Arrays.fill(next, 0L);
+        char c = representatives[symbolClass];
+        boolean any = false;
+
+        for (int word = 0; word < words; word++) {
+            for (long bits = current[word]; bits != 0; bits &= bits - 1) {
+                int member = (word << 6) | Long.numberOfTrailingZeros(bits);
+                int rule = ruleOfState[member];
+                AutomatonIndex index = rules.get(rule);
+                int offset = offsets[rule];
+                for (int target : index.successors[member - offset][index.charClasses[c]]) {
+                    next[(target + offset) >>> 6] |= 1L << (target + offset);
+                    any = true;
+                }
+            }
+        }
+
+        if (!any) {
+            transitions[state * representatives.length + symbolClass] = DEAD;
+            return DEAD;
+        }
+
+        int known = states.find(next);
+        if (known >= 0) {
+            transitions[state * representatives.length + symbolClass] = known;
+            return known;
+        }
+
+        // A full cache is dropped as a whole, the current input continues from the new copy of the target
+        if (cacheFull()) {
+            flush();
+            return addState(next);
+        }
+
+        int added = addState(next);
+        transitions[state * representatives.length + symbolClass] = added;
+        return added;
+    }
+
+    private int addState(long[] set) {
+        int id = states.intern(set);
+        int classCount = representatives.length;
+
+        if (id == acceptingRules.length) {
+            transitions = Arrays.copyOf(transitions, id * 2 * classCount);
+            Arrays.fill(transitions, id * classCount, transitions.length, UNKNOWN);
+            acceptingRules = Arrays.copyOf(acceptingRules, id * 2);
+        }
+
+        Arrays.fill(ruleBits, 0L);
+        boolean accepts = false;
+        for (int word = 0; word < words; word++) {
+            for (long bits = set[word] & acceptMask[word]; bits != 0; bits &= bits - 1) {
+                int rule = ruleOfState[(word << 6) | Long.numberOfTrailingZeros(bits)];
+                ruleBits[rule >>> 6] |= 1L << rule;
+                accepts = true;
+            }
+        }
+        acceptingRules[id] = accepts ? ruleSets.intern(ruleBits) : NO_RULES;
+        return id;
+    }
+
+    // Recomputes the start and accept masks of the union, then starts with an empty cache
+    private void resetCache() {
+        words = Math.max(1, (stateCount + 63) >>> 6);
+        startMask = new long[words];
+        acceptMask = new long[words];
+        for (int rule = 0; rule < rules.size(); rule++) {
+            AutomatonIndex index = rules.get(rule);
+            if (index == null) {
+                continue;
+            }
+
+            int offset = offsets[rule];
+            for (int state : index.startStates) {
+                startMask[(state + offset) >>> 6] |= 1L << (state + offset);
+            }
+            for (int state = 0; state < index.stateCount(); state++) {
+                if (index.accepting[state]) {
+                    acceptMask[(state + offset) >>> 6] |= 1L << (state + offset);
+                }
+            }
+        }
+
+        current = new long[words];
+        next = new long[words];
+        ruleBits = new long[Math.max(1, (rules.size() + 63) >>> 6)];
+        flush();
+    }
+
+    private void flush() {
+        states = new StateSetTable(words);
+        ruleSets = new StateSetTable(ruleBits.length);
+        transitions = new int[16 * representatives.length];
+        Arrays.fill(transitions, UNKNOWN);
+        acceptingRules = new int[16];
+
+        boolean empty = true;
+        for (long word : startMask) {
+            empty &= word == 0;
+        }
+        startState = empty ? DEAD : addState(startMask);
+    }
+
+    // Moves the states of the remaining rules together, rule ids stay the same
+    private void compact() {
+        int compacted = 0;
+        for (int rule = 0; rule < rules.size(); rule++) {
+            AutomatonIndex index = rules.get(rule);
+            if (index != null) {
+                offsets[rule] = compacted;
+                Arrays.fill(ruleOfState, compacted, compacted + index.stateCount(), rule);
+                compacted += index.stateCount();
+            }
+        }
+
+        stateCount = compacted;
+        removedStateCount = 0;
+    }
+
+    private void ensureStateCapacity(int capacity) {
+        if (capacity > ruleOfState.length) {
+            ruleOfState = Arrays.copyOf(ruleOfState, Math.max(capacity, ruleOfState.length * 2));
+        }
+    }
+
+    // Estimated cost of one more state: its set, its transition row, hash table entries and rule set id
+    private boolean cacheFull() {
+        long bytesPerState = (long) words * Long.BYTES + (long) representatives.length * Integer.BYTES + 4L * Integer.BYTES;
+        return (states.size() + 1L) * bytesPerState > maxCacheBytes;
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.Arrays;
+
+// Hash-consing table for sets of automaton states. Every distinct bitset of `words` longs
+// gets a dense int id in insertion order, and the sets themselves are stored back to back
+// in one long[] so interning never allocates per set.
+class StateSetTable {
+
+    private static final int EMPTY_SLOT = -1;
+
+    private final int words;
+    private long[] sets;
+    private int[] hashes;
+    private int[] slots;
+    private int size;
+
+    StateSetTable(int words) {
+        this.words = words;
+        clear();
+    }
+
+    // Returns the id of the set, adding it to the table if it is not there yet.
+    int intern(long[] set) {
+        return intern(set, 0);
+    }
+
+    int intern(long[] sets, int offset) {
+        int hash = hash(sets, offset);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY_SLOT) {
+                return add(sets, offset, hash, slot);
+            }
+            if (hashes[id] == hash && equalsAt(id, sets, offset)) {
+                return id;
+            }
+        }
+    }
+
+    int find(long[] set) {
+        return find(set, 0);
+    }
+
+    // Only reads the table, so any number of threads may call it while nobody interns.
+    int find(long[] sets, int offset) {
+        int hash = hash(sets, offset);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot];
+            if (id == EMPTY_SLOT || (hashes[id] == hash && equalsAt(id, sets, offset))) {
+                return id;
+            }
+        }
+    }
+
+    void get(int id, long[] into) {
+        System.arraycopy(sets, id * words, into, 0, words);
+    }
+
+    boolean contains(int id, int state) {
+        return (sets[id * words + (state >>> 6)] & (1L << state)) != 0;
+    }
+
+    boolean intersects(int id, long[] mask) {
+        for (int word = 0; word < words; word++) {
+            if ((sets[id * words + word] & mask[word]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isSubsetOf(int id, long[] set) {
+        for (int word = 0; word < words; word++) {
+            if ((sets[id * words + word] & ~set[word]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean isSubsetOf(int id, int otherId) {
+        for (int word = 0; word < words; word++) {
+            if ((sets[id * words + word] & ~sets[otherId * words + word]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getWords() {
+        return words;
+    }
+
+    void clear() {
+        sets = new long[16 * words];
+        hashes = new int[16];
+        slots = new int[32];
+        Arrays.fill(slots, EMPTY_SLOT);
+        size = 0;
+    }
+
+    long memoryBytes() {
+        return (long) sets.length * Long.BYTES + (long) hashes.length * Integer.BYTES + (long) slots.length * Integer.BYTES;
+    }
+
+    private int add(long[] set, int offset, int hash, int slot) {
+        int id = size++;
+        if (size > hashes.length) {
+            sets = Arrays.copyOf(sets, sets.length * 2);
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+
+        System.arraycopy(set, offset, sets, id * words, words);
+        hashes[id] = hash;
+        slots[slot] = id;
+
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        Arrays.fill(slots, EMPTY_SLOT);
+        int mask = slots.length - 1;
+
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != EMPTY_SLOT) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private boolean equalsAt(int id, long[] set, int offset) {
+        int base = id * words;
+        for (int word = 0; word < words; word++) {
+            if (sets[base + word] != set[offset + word]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int hash(long[] set, int offset) {
+        long hash = 0;
+        for (int word = 0; word < words; word++) {
+            hash = (hash ^ set[offset + word]) * 0x9E3779B97F4A7C15L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        return (int) (hash ^ (hash >>> 33));
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.Arrays;
+import java.util.StringJoiner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Subset construction over int state sets. Every subset is interned as a canonical bitset
+// and gets an int id on first sight, so it is enqueued and expanded exactly once and no
+// strings are built until the final states are named for display.
+class SubsetConstruction {
+
+    private static final int NEW_SUBSET = -2;
+    private static final int SUBSETS_PER_TASK = 64;
+
+    private final AutomatonIndex index;
+    private final BitParallelNfa nfa;
+    private final int classCount;
+    private final StateSetTable subsets;
+
+    private int[] table;
+
+    SubsetConstruction(AutomatonIndex index) {
+        this.index = index;
+        this.nfa = new BitParallelNfa(index);
+        this.classCount = nfa.getClassCount();
+        this.subsets = new StateSetTable(nfa.getWordCount());
+        this.table = new int[16 * classCount];
+    }
+
+    CompiledAutomaton determinize() {
+        long[] current = new long[nfa.getWordCount()];
+        long[] next = new long[nfa.getWordCount()];
+        subsets.intern(nfa.getStartMask());
+
+        // Ids are handed out in discovery order, so the id sequence itself is the BFS queue
+        for (int subset = 0; subset < subsets.size(); subset++) {
+            subsets.get(subset, current);
+            ensureCapacity(subset + 1);
+
+            for (int symbol = 0; symbol < classCount; symbol++) {
+                table[subset * classCount + symbol] = nfa.step(current, symbol, next)
+                        ? subsets.intern(next)
+                        : CompiledAutomaton.DEAD_STATE;
+            }
+        }
+
+        return build();
+    }
+
+    // Expands the queue in batches. Workers compute the successors of a batch in parallel and
+    // look them up in the subset table, which nobody writes to meanwhile. Subsets that are not
+    // known yet are then numbered by a short sequential pass in (subset, symbol) order, so the
+    // ids come out exactly as in determinize(), whatever the number of threads.
+    CompiledAutomaton determinize(ForkJoinPool pool) {
+        int words = nfa.getWordCount();
+        int batchSize = Math.max(SUBSETS_PER_TASK, pool.getParallelism() * SUBSETS_PER_TASK * 4);
+        int[] targets = new int[batchSize * classCount];
+        long[] pending = new long[batchSize * classCount * words];
+        subsets.intern(nfa.getStartMask());
+
+        for (int from = 0; from < subsets.size(); ) {
+            int to = Math.min(subsets.size(), from + batchSize);
+            ensureCapacity(to);
+            pool.invoke(new ExpandTask(from, from, to, targets, pending));
+
+            for (int subset = from; subset < to; subset++) {
+                for (int symbol = 0; symbol < classCount; symbol++) {
+                    int slot = (subset - from) * classCount + symbol;
+                    int target = targets[slot];
+                    table[subset * classCount + symbol] = target == NEW_SUBSET ? subsets.intern(pending, slot * words) : target;
+                }
+            }
+
+            from = to;
+        }
+
+        return build();
+    }
+
+    private class ExpandTask extends RecursiveAction {
+        private final int batchStart;
+        private final int from;
+        private final int to;
+        private final int[] targets;
+        private final long[] pending;
+
+        ExpandTask(int batchStart, int from, int to, int[] targets, long[] pending) {
+            this.batchStart = batchStart;
+            this.from = from;
+            this.to = to;
+            this.targets = targets;
+            this.pending = pending;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SUBSETS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ExpandTask(batchStart, from, middle, targets, pending), new ExpandTask(batchStart, middle, to, targets, pending));
+                return;
+            }
+
+            int words = nfa.getWordCount();
+            long[] current = new long[words];
+            long[] next = new long[words];
+
+            for (int subset = from; subset < to; subset++) {
+                subsets.get(subset, current);
+                for (int symbol = 0; symbol < classCount; symbol++) {
+                    int slot = (subset - batchStart) * classCount + symbol;
+                    if (!nfa.step(current, symbol, next)) {
+                        targets[slot] = CompiledAutomaton.DEAD_STATE;
+                        continue;
+                    }
+
+                    int known = subsets.find(next);
+                    if (known < 0) {
+                        System.arraycopy(next, 0, pending, slot * words, words);
+                        known = NEW_SUBSET;
+                    }
+                    targets[slot] = known;
+                }
+            }
+        }
+    }
+
+    private CompiledAutomaton build() {
+        int count = subsets.size();
+        String[] names = new String[count];
+        boolean[] accepting = new boolean[count];
+        long[] members = new long[nfa.getWordCount()];
+
+        for (int subset = 0; subset < count; subset++) {
+            names[subset] = subsetName(subset, members);
+            accepting[subset] = subsets.intersects(subset, nfa.getAcceptMask());
+        }
+
+        return new CompiledAutomaton(names, index.symbols, index.charClasses, index.classCount, Arrays.copyOf(table, count * classCount), accepting, 0);
+    }
+
+    // Singletons keep the NFA state name, larger subsets list their members in braces
+    private String subsetName(int subset, long[] members) {
+        subsets.get(subset, members);
+        StringJoiner joiner = new StringJoiner(",", "{", "}");
+        String single = null;
+        int count = 0;
+
+        for (int word = 0; word < members.length; word++) {
+            for (long bits = members[word]; bits != 0; bits &= bits - 1) {
+                single = index.stateNames[(word << 6) | Long.numberOfTrailingZeros(bits)];
+                joiner.add(single);
+                count++;
+            }
+        }
+
+        return count == 1 ? single : joiner.toString();
+    }
+
+    private void ensureCapacity(int subsetCount) {
+        if (subsetCount * classCount > table.length) {
+            table = Arrays.copyOf(table, Math.max(subsetCount * classCount, table.length * 2));
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Throughput measurements for the matching engines. Not part of the unit tests,
+// run it by hand with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=AutomatonBenchmark
+public class AutomatonBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    public static void main(String[] args) {
+        benchmarkMatchAll();
+        benchmarkRegex();
+        benchmarkRuleSet();
+        benchmarkScan();
+        benchmarkGenerate();
+    }
+
+    private static void benchmarkMatchAll() {
+        Grammar grammar = new Grammar("S", Map.of(
+                "S", List.of("aP", "bQ"),
+                "P", List.of("bP", "cP", "dQ", "e"),
+                "Q", List.of("eQ", "fQ", "a")
+        ));
+        FiniteAutomaton automaton = grammar.toFiniteAutomaton();
+
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            String generated = grammar.generateString();
+            inputs.add(i % 3 == 0 ? generated + "x" : generated);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            double stringsPerSecond = measure(inputs.size(), () -> automaton.matchAll(inputs, pool));
+            pool.shutdown();
+
+            System.out.printf("matchAll, %d worker(s): %,.0f strings/s, %,.0f strings/s per core%n",
+                    parallelism, stringsPerSecond, stringsPerSecond / parallelism);
+        }
+    }
+
+    // Same patterns and inputs through java.util.regex, the minimized DFA table and the bitset NFA
+    private static void benchmarkRegex() {
+        Map<String, String> patterns = Map.of(
+                "(a|b)*abb", "ab",
+                "[a-z]+@[a-z]+\\.(com|org|net)", "abcxyz@.comorgnet",
+                "(0|1(01*0)*1)*", "01",
+                "\\d+(\\.\\d{1,2})?(e[+-]?\\d+)?", "0123456789.e+-"
+        );
+        Random random = new Random(7);
+
+        for (Map.Entry<String, String> entry : patterns.entrySet()) {
+            List<String> inputs = new ArrayList<>();
+            long chars = 0;
+            for (int i = 0; i < 100_000; i++) {
+                StringBuilder input = new StringBuilder();
+                for (int length = 10 + random.nextInt(90); length > 0; length--) {
+                    input.append(entry.getValue().charAt(random.nextInt(entry.getValue().length())));
+                }
+                inputs.add(input.toString());
+                chars += input.length();
+            }
+
+            Matcher javaMatcher = Pattern.compile(entry.getKey()).matcher("");
+            FiniteAutomaton nfa = RegexCompiler.compile(entry.getKey());
+            CompiledAutomaton dfa = nfa.compile().minimize();
+            BitParallelNfa bitParallel = nfa.toBitParallelNfa();
+
+            double javaRate = measure(chars, () -> inputs.forEach(input -> javaMatcher.reset(input).matches()));
+            double dfaRate = measure(chars, () -> inputs.forEach(dfa::matches));
+            double nfaRate = measure(chars, () -> inputs.forEach(bitParallel::matches));
+
+            System.out.printf("%-40s java.util.regex %8.1f MB/s, DFA %8.1f MB/s (%d states), bit-parallel NFA %8.1f MB/s (%d states)%n",
+                    entry.getKey(), javaRate / 1e6, dfaRate / 1e6, dfa.getStateCount(), nfaRate / 1e6, bitParallel.getStateCount());
+        }
+    }
+
+    // One pass through a RuleSet against one compiled DFA per rule
+    private static void benchmarkRuleSet() {
+        Random random = new Random(5);
+        List<CompiledAutomaton> separate = new ArrayList<>();
+        RuleSet ruleSet = new RuleSet(64L << 20);
+        for (int rule = 0; rule < 1000; rule++) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0; i < 4; i++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            FiniteAutomaton automaton = RegexCompiler.compile("[a-z]*" + word + "[a-z]*");
+            separate.add(automaton.compile());
+            ruleSet.add(automaton);
+        }
+
+        List<String> inputs = new ArrayList<>();
+        long chars = 0;
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int length = 20 + random.nextInt(60); length > 0; length--) {
+                input.append((char) ('a' + random.nextInt(26)));
+            }
+            inputs.add(input.toString());
+            chars += input.length();
+        }
+
+        double separateRate = measure(chars, () -> inputs.forEach(input -> separate.forEach(dfa -> dfa.matches(input))));
+        double ruleSetRate = measure(chars, () -> inputs.forEach(ruleSet::match));
+
+        System.out.printf("1000 rules: one DFA per rule %8.3f MB/s, rule set %8.1f MB/s (%d cached states)%n",
+                separateRate / 1e6, ruleSetRate / 1e6, ruleSet.getCachedStateCount());
+    }
+
+    // Finding all occurrences in one long text, java.util.regex uses leftmost-first semantics
+    private static void benchmarkScan() {
+        Random random = new Random(3);
+        String[] words = {"error", "warning", "info", "user", "alice@example.com", "bob@test.org", "42", "3.14", "timeout"};
+        StringBuilder log = new StringBuilder();
+        while (log.length() < 20_000_000) {
+            log.append(words[random.nextInt(words.length)]).append(random.nextInt(8) == 0 ? '\n' : ' ');
+        }
+        String text = log.toString();
+
+        for (String pattern : List.of("[a-z]+@[a-z]+\\.(com|org|net)", "\\d+(\\.\\d+)?", "error|timeout")) {
+            Matcher javaMatcher = Pattern.compile(pattern).matcher(text);
+            MatchScanner scanner = RegexCompiler.compile(pattern).scanner();
+
+            double javaRate = measure(text.length(), () -> {
+                javaMatcher.reset();
+                while (javaMatcher.find()) {
+                    javaMatcher.end();
+                }
+            });
+            double scanRate = measure(text.length(), () -> scanner.count(text));
+
+            System.out.printf("scan %-32s java.util.regex %8.1f MB/s, MatchScanner %8.1f MB/s (%d matches, %d cached states)%n",
+                    pattern, javaRate / 1e6, scanRate / 1e6, scanner.count(text), scanner.getCachedStateCount());
+        }
+    }
+
+    private static void benchmarkGenerate() {
+        Grammar doubling = new Grammar("S", Map.of("S", List.of("SS", "aSb", "a")));
+        for (int maxLength : new int[]{100, 10_000}) {
+            DerivationGenerator generator = doubling.generator(maxLength, DerivationGenerator.UNBOUNDED);
+            SplittableRandom random = new SplittableRandom(7);
+            StringBuilder buffer = new StringBuilder();
+            int count = 1_000_000 / maxLength * 10;
+            long[] chars = new long[1];
+
+            double rate = measure(count, () -> {
+                for (int i = 0; i < count; i++) {
+                    generator.generate(random, buffer);
+                    chars[0] += buffer.length();
+                }
+            });
+            System.out.printf("generate at most %6d chars %10.0f strings/s, %6.1f chars per string%n",
+                    maxLength, rate, chars[0] / (double) (count * (WARMUP_ROUNDS + MEASURED_ROUNDS)));
+        }
+
+        DerivationGenerator corpus = doubling.generator(100, DerivationGenerator.UNBOUNDED);
+        double sequentialRate = measure(1_000_000, () -> corpus.generate(1_000_000, 11).mapToLong(String::length).sum());
+        double parallelRate = measure(1_000_000, () -> corpus.generate(1_000_000, 11).parallel().mapToLong(String::length).sum());
+        System.out.printf("corpus of 1000000 strings: sequential %10.0f strings/s, parallel %10.0f strings/s on %d threads%n",
+                sequentialRate, parallelRate, ForkJoinPool.commonPool().getParallelism());
+    }
+
+    private static double measure(long operations, Runnable run) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run.run();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            run.run();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        return operations * MEASURED_ROUNDS / (elapsed / 1e9);
+    }
+}
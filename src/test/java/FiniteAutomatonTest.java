@@ -0,0 +1,638 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FiniteAutomatonTest {
+
+    private FiniteAutomaton grammarAutomaton() {
+        Map<String, List<String>> productions = Map.of(
+                "S", List.of("aP", "bQ"),
+                "P", List.of("bP", "cP", "dQ", "e"),
+                "Q", List.of("eQ", "fQ", "a")
+        );
+
+        return new Grammar("S", productions).toFiniteAutomaton();
+    }
+
+    private FiniteAutomaton nonDeterministicAutomaton() {
+        return new FiniteAutomaton(
+                Set.of("q0", "q1", "q2", "q3"),
+                Set.of("a", "c", "b"),
+                Map.of(
+                        "q0", Map.of("a", Set.of("q0", "q1")),
+                        "q1", Map.of("c", Set.of("q1"), "b", Set.of("q2")),
+                        "q2", Map.of("b", Set.of("q3")),
+                        "q3", Map.of("a", Set.of("q1"))
+                ),
+                "q0",
+                Set.of("q2")
+        );
+    }
+
+    // p0 loops on 'a' and also starts a chain of the given length, so it accepts a^n for n >= length.
+    private FiniteAutomaton chainAutomaton(int length) {
+        Set<String> states = new HashSet<>();
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+
+        for (int i = 0; i <= length; i++) {
+            states.add("p" + i);
+        }
+        transitions.put("p0", Map.of("a", Set.of("p0", "p1")));
+        for (int i = 1; i < length; i++) {
+            transitions.put("p" + i, Map.of("a", Set.of("p" + (i + 1))));
+        }
+
+        return new FiniteAutomaton(states, Set.of("a"), transitions, "p0", Set.of("p" + length));
+    }
+
+    // Accepts the strings over {a, b} whose n-th symbol from the end is an 'a', its DFA needs 2^n states.
+    private FiniteAutomaton nthFromLastAutomaton(int n) {
+        Set<String> states = new HashSet<>();
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+
+        for (int i = 0; i <= n; i++) {
+            states.add("q" + i);
+        }
+        transitions.put("q0", Map.of("a", Set.of("q0", "q1"), "b", Set.of("q0")));
+        for (int i = 1; i < n; i++) {
+            transitions.put("q" + i, Map.of("a", Set.of("q" + (i + 1)), "b", Set.of("q" + (i + 1))));
+        }
+
+        return new FiniteAutomaton(states, Set.of("a", "b"), transitions, "q0", Set.of("q" + n));
+    }
+
+    @Test
+    void compiledTableMatchesAcceptedStrings() {
+        CompiledAutomaton compiled = grammarAutomaton().compile();
+
+        for (String input : List.of("ae", "abcbe", "adfea", "bfa", "ba")) {
+            assertTrue(compiled.matches(input), input);
+        }
+        for (String input : List.of("", "a", "ab", "bz", "aee", "bfax")) {
+            assertFalse(compiled.matches(input), input);
+        }
+    }
+
+    @Test
+    void transitionsOnSymbolsOutsideTheAlphabetAreIgnored() {
+        FiniteAutomaton automaton = new FiniteAutomaton(
+                Set.of("q0", "q1"),
+                Set.of("a"),
+                Map.of("q0", Map.of("a", Set.of("q1"), "b", Set.of("q1"))),
+                "q0",
+                Set.of("q1")
+        );
+
+        assertTrue(automaton.stringBelongsToLanguage("a"));
+        assertFalse(automaton.stringBelongsToLanguage("b"));
+        assertFalse(automaton.toBitParallelNfa().matches("b"));
+        assertFalse(automaton.convertToDeterministic().stringBelongsToLanguage("b"));
+    }
+
+    @Test
+    void automatonCannotBeChangedBehindItsCompiledForm() {
+        Map<String, Set<String>> moves = new HashMap<>(Map.of("a", new HashSet<>(Set.of("q1"))));
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>(Map.of("q0", moves));
+        FiniteAutomaton automaton = new FiniteAutomaton(Set.of("q0", "q1"), Set.of("a", "b"), transitions, "q0", Set.of("q1"));
+        assertTrue(automaton.stringBelongsToLanguage("a"));
+
+        moves.put("b", new HashSet<>(Set.of("q1")));
+        moves.get("a").remove("q1");
+        assertTrue(automaton.stringBelongsToLanguage("a"));
+        assertFalse(automaton.stringBelongsToLanguage("b"));
+
+        assertThrows(UnsupportedOperationException.class, () -> automaton.getStates().add("q2"));
+        assertThrows(UnsupportedOperationException.class, () -> automaton.getAcceptStates().add("q0"));
+        assertThrows(UnsupportedOperationException.class, () -> automaton.getTransitions().get("q0").put("b", Set.of("q1")));
+        assertThrows(UnsupportedOperationException.class, () -> automaton.getTransitions().get("q0").get("a").add("q0"));
+    }
+
+    @Test
+    void convertToDeterministicKeepsTheLanguage() {
+        FiniteAutomaton automaton = nonDeterministicAutomaton();
+        FiniteAutomaton deterministic = automaton.convertToDeterministic();
+
+        assertTrue(deterministic.isDeterministic());
+        assertEquals("q0", deterministic.getStartState());
+        assertTrue(deterministic.getStates().contains("{q0,q1}"));
+        for (String input : List.of("", "a", "ab", "aab", "acccb", "abbab", "abb", "ba", "abx")) {
+            assertEquals(automaton.stringBelongsToLanguage(input), deterministic.stringBelongsToLanguage(input), input);
+        }
+    }
+
+    @Test
+    void conversionsRejectMultiCharacterSymbols() {
+        FiniteAutomaton automaton = new FiniteAutomaton(
+                Set.of("q0", "q1"),
+                Set.of("a", "ab"),
+                Map.of("q0", Map.of("a", Set.of("q0", "q1"), "ab", Set.of("q1"))),
+                "q0",
+                Set.of("q1")
+        );
+
+        assertThrows(IllegalArgumentException.class, automaton::convertToDeterministic);
+        assertThrows(IllegalArgumentException.class, () -> automaton.convertToDeterministic(ForkJoinPool.commonPool()));
+        assertThrows(IllegalArgumentException.class, automaton::minimize);
+        assertThrows(IllegalArgumentException.class, automaton::reduce);
+        assertTrue(automaton.stringBelongsToLanguage("a"));
+    }
+
+    @Test
+    void convertToDeterministicKeepsSubsetsWithSimilarNamesApart() {
+        // Joining the member names would turn both {q1, q12} and {q11, q2} into "q1q12"
+        // Every state has its own past and future, so the NFA reduction merges none of them
+        FiniteAutomaton automaton = new FiniteAutomaton(
+                Set.of("s", "q1", "q2", "q11", "q12"),
+                Set.of("a", "b", "c", "d", "e"),
+                Map.of(
+                        "s", Map.of("a", Set.of("q1", "q12"), "b", Set.of("q11", "q2"), "c", Set.of("q2")),
+                        "q12", Map.of("c", Set.of("q1")),
+                        "q11", Map.of("d", Set.of("q1")),
+                        "q2", Map.of("e", Set.of("q1"))
+                ),
+                "s",
+                Set.of("q1")
+        );
+
+        FiniteAutomaton deterministic = automaton.convertToDeterministic();
+
+        assertEquals(5, deterministic.getStates().size());
+        assertTrue(deterministic.getStates().containsAll(Set.of("{q1,q12}", "{q11,q2}")));
+        assertTrue(deterministic.stringBelongsToLanguage("a"));
+        assertTrue(deterministic.stringBelongsToLanguage("bd"));
+        assertFalse(deterministic.stringBelongsToLanguage("b"));
+    }
+
+    @Test
+    void bitParallelNfaMatchesNonDeterministicAutomata() {
+        BitParallelNfa nfa = nonDeterministicAutomaton().toBitParallelNfa();
+
+        for (String input : List.of("ab", "aab", "acccb", "abbab")) {
+            assertTrue(nfa.matches(input), input);
+        }
+        for (String input : List.of("", "a", "abb", "ba", "abx")) {
+            assertFalse(nfa.matches(input), input);
+        }
+    }
+
+    @Test
+    void bitParallelNfaHandlesMoreThanOneWordOfStates() {
+        FiniteAutomaton automaton = chainAutomaton(100);
+
+        assertEquals(2, automaton.toBitParallelNfa().getWordCount());
+        assertFalse(automaton.stringBelongsToLanguage("a".repeat(99)));
+        assertTrue(automaton.stringBelongsToLanguage("a".repeat(100)));
+        assertTrue(automaton.stringBelongsToLanguage("a".repeat(250)));
+    }
+
+    @Test
+    void matcherConsumesInputIncrementally() throws IOException {
+        Map<FiniteAutomaton, String> acceptedInputs = Map.of(grammarAutomaton(), "abcbe", nonDeterministicAutomaton(), "abbab");
+
+        for (Map.Entry<FiniteAutomaton, String> entry : acceptedInputs.entrySet()) {
+            AutomatonMatcher matcher = entry.getKey().matcher();
+            String accepted = entry.getValue();
+
+            matcher.feed(accepted.charAt(0));
+            matcher.feed(CharBuffer.wrap(accepted, 1, accepted.length()));
+            assertTrue(matcher.isAccepting());
+
+            matcher.feed('z');
+            assertTrue(matcher.isDead());
+            assertFalse(matcher.isAccepting());
+
+            matcher.reset();
+            assertFalse(matcher.isDead());
+        }
+
+        assertTrue(grammarAutomaton().streamBelongsToLanguage(new StringReader("a" + "b".repeat(20000) + "e")));
+        assertTrue(nonDeterministicAutomaton().streamBelongsToLanguage(
+                Channels.newChannel(new ByteArrayInputStream(("a" + "c".repeat(20000) + "b").getBytes(StandardCharsets.UTF_8))),
+                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void matcherStopsReadingOnceDead() throws IOException {
+        // An endless reader, matching only terminates because the matcher dies on the first chunk
+        Reader endless = new Reader() {
+            @Override
+            public int read(char[] buffer, int offset, int length) {
+                Arrays.fill(buffer, offset, offset + length, 'z');
+                return length;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        assertFalse(grammarAutomaton().streamBelongsToLanguage(endless));
+    }
+
+    @Test
+    void matchAllAgreesWithSingleMatches() {
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            inputs.add(i % 2 == 0 ? "a" + "c".repeat(i % 7) + "b" : "ab".repeat(i % 5));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        for (FiniteAutomaton automaton : List.of(grammarAutomaton(), nonDeterministicAutomaton())) {
+            BitSet matched = automaton.matchAll(inputs, pool);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertEquals(automaton.stringBelongsToLanguage(inputs.get(i)), matched.get(i), inputs.get(i));
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void lazyDeterminizationBuildsOnlyVisitedStates() {
+        LazyDfa lazy = nonDeterministicAutomaton().toLazyDeterministic();
+
+        assertTrue(lazy.matches("ab"));
+        assertTrue(lazy.matches("abbab"));
+        assertFalse(lazy.matches("abb"));
+        assertFalse(lazy.matches("abx"));
+        assertTrue(lazy.getCachedStateCount() <= 5);
+        assertEquals(0, lazy.getFlushCount());
+    }
+
+    @Test
+    void lazyDeterminizationFallsBackWhenCacheIsTooSmall() {
+        FiniteAutomaton automaton = chainAutomaton(100);
+        LazyDfa lazy = automaton.toLazyDeterministic(2048);
+
+        for (int length = 95; length <= 105; length++) {
+            String input = "a".repeat(length);
+            assertEquals(length >= 100, lazy.matches(input), input);
+        }
+        assertTrue(lazy.getFlushCount() > 0);
+        assertTrue(lazy.getCacheBytes() <= 4096);
+    }
+
+    @Test
+    void minimizeMergesEquivalentStatesAndTrims() {
+        // Even number of a's, tracked twice over, plus an unreachable state and a dead end
+        FiniteAutomaton automaton = new FiniteAutomaton(
+                Set.of("e0", "o0", "e1", "o1", "u", "d"),
+                Set.of("a", "b"),
+                Map.of(
+                        "e0", Map.of("a", Set.of("o1"), "b", Set.of("e0")),
+                        "o1", Map.of("a", Set.of("e1"), "b", Set.of("d")),
+                        "e1", Map.of("a", Set.of("o0"), "b", Set.of("e1")),
+                        "o0", Map.of("a", Set.of("e0"), "b", Set.of("o0")),
+                        "d", Map.of("a", Set.of("d")),
+                        "u", Map.of("a", Set.of("e0"))
+                ),
+                "e0",
+                Set.of("e0", "e1")
+        );
+
+        FiniteAutomaton minimal = automaton.minimize();
+
+        assertEquals(4, minimal.getStates().size());
+        for (String input : List.of("", "aa", "bab", "aaaa", "aabaab", "a", "ab", "aab", "aaab")) {
+            assertEquals(automaton.stringBelongsToLanguage(input), minimal.stringBelongsToLanguage(input), input);
+        }
+    }
+
+    @Test
+    void minimizeHandlesLargeAutomata() {
+        // A cycle of 90 000 states on 'a' that accepts every third length minimizes to three states
+        int size = 90_000;
+        Set<String> states = new HashSet<>();
+        Set<String> acceptStates = new HashSet<>();
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            states.add("s" + i);
+            transitions.put("s" + i, Map.of("a", Set.of("s" + ((i + 1) % size))));
+            if (i % 3 == 0) {
+                acceptStates.add("s" + i);
+            }
+        }
+
+        CompiledAutomaton minimal = new FiniteAutomaton(states, Set.of("a"), transitions, "s0", acceptStates).compile().minimize();
+
+        assertEquals(3, minimal.getStateCount());
+        assertTrue(minimal.matches("aaaaaa"));
+        assertFalse(minimal.matches("aaaa"));
+    }
+
+    @Test
+    void minimizeEmptyLanguageToSingleState() {
+        FiniteAutomaton automaton = new FiniteAutomaton(
+                Set.of("q0", "q1"), Set.of("a"), Map.of("q0", Map.of("a", Set.of("q1"))), "q0", Set.of());
+
+        CompiledAutomaton minimal = automaton.compile().minimize();
+
+        assertEquals(1, minimal.getStateCount());
+        assertFalse(minimal.matches(""));
+        assertFalse(minimal.matches("a"));
+    }
+
+    @Test
+    void reductionMergesBisimilarStatesAndKeepsTheLanguage() {
+        // Two copies of the same NFA behind an epsilon fork, plus a branch that never accepts
+        FiniteAutomaton single = nonDeterministicAutomaton();
+        Set<String> states = new HashSet<>(Set.of("s", "dead"));
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+        for (String copy : List.of("x", "y")) {
+            single.getStates().forEach(state -> states.add(copy + state));
+            single.getTransitions().forEach((state, moves) -> {
+                Map<String, Set<String>> copiedMoves = new HashMap<>();
+                moves.forEach((symbol, targets) -> copiedMoves.put(symbol, targets.stream().map(target -> copy + target).collect(Collectors.toSet())));
+                transitions.put(copy + state, copiedMoves);
+            });
+        }
+        transitions.put("s", Map.of(FiniteAutomaton.EPSILON, Set.of("xq0", "yq0"), "b", Set.of("dead")));
+        transitions.put("dead", Map.of("a", Set.of("dead")));
+        FiniteAutomaton automaton = new FiniteAutomaton(states, Set.of("a", "b", "c"), transitions, "s", Set.of("xq2", "yq2"));
+
+        FiniteAutomaton reduced = automaton.reduce();
+
+        assertEquals(single.reduce().getStates().size(), reduced.getStates().size());
+        assertTrue(reduced.getStates().size() <= single.getStates().size());
+
+        Random random = new Random(9);
+        for (int round = 0; round < 200; round++) {
+            FiniteAutomaton randomAutomaton = round == 0 ? automaton : randomAutomaton(random, 2 + random.nextInt(6));
+            BitParallelNfa expected = randomAutomaton.toBitParallelNfa();
+            BitParallelNfa actual = randomAutomaton.reduce().toBitParallelNfa();
+            for (int i = 0; i < 200; i++) {
+                StringBuilder input = new StringBuilder();
+                for (int length = random.nextInt(8); length > 0; length--) {
+                    input.append("abc".charAt(random.nextInt(3)));
+                }
+                assertEquals(expected.matches(input), actual.matches(input), input.toString());
+            }
+        }
+    }
+
+    private static FiniteAutomaton randomAutomaton(Random random, int size) {
+        Set<String> states = new HashSet<>();
+        Set<String> acceptStates = new HashSet<>();
+        Map<String, Map<String, Set<String>>> transitions = new HashMap<>();
+        for (int state = 0; state < size; state++) {
+            states.add("r" + state);
+            if (random.nextInt(3) == 0) {
+                acceptStates.add("r" + state);
+            }
+            Map<String, Set<String>> moves = new HashMap<>();
+            for (String symbol : List.of(FiniteAutomaton.EPSILON, "a", "b", "c")) {
+                Set<String> targets = new HashSet<>();
+                for (int target = 0; target < size; target++) {
+                    if (random.nextInt(symbol.isEmpty() ? 8 : 3) == 0) {
+                        targets.add("r" + target);
+                    }
+                }
+                if (!targets.isEmpty()) {
+                    moves.put(symbol, targets);
+                }
+            }
+            transitions.put("r" + state, moves);
+        }
+        return new FiniteAutomaton(states, Set.of("a", "b", "c"), transitions, "r0", acceptStates);
+    }
+
+    @Test
+    void parallelDeterminizationNumbersStatesLikeSequential() {
+        CompiledAutomaton sequential = nthFromLastAutomaton(12).compile();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        CompiledAutomaton parallel = nthFromLastAutomaton(12).compile(pool);
+        pool.shutdown();
+
+        assertEquals(1 << 12, parallel.getStateCount());
+        assertEquals(sequential.getStateCount(), parallel.getStateCount());
+        for (int state = 0; state < sequential.getStateCount(); state++) {
+            assertEquals(sequential.getStateName(state), parallel.getStateName(state));
+            assertEquals(sequential.isAccepting(state), parallel.isAccepting(state));
+            for (int symbol = 0; symbol < sequential.getClassCount(); symbol++) {
+                assertEquals(sequential.target(state, symbol), parallel.target(state, symbol));
+            }
+        }
+    }
+
+
+    @Test
+    void chunkedFileMatchingAgreesWithSequential(@TempDir Path directory) throws IOException {
+        // Two-byte UTF-8 characters make sure chunk boundaries never split a character
+        FiniteAutomaton automaton = RegexCompiler.compile("(a|b|\u00E9)*abb", "ab\u00E9");
+        Random random = new Random(7);
+        StringBuilder body = new StringBuilder();
+        while (body.length() < 3_000_000) {
+            body.append("ab\u00E9".charAt(random.nextInt(3)));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (String suffix : List.of("abb", "aba", "\u00E9bb", "c")) {
+                String input = body + suffix;
+                Path file = directory.resolve("input.txt");
+                Files.writeString(file, input, StandardCharsets.UTF_8);
+
+                boolean expected = automaton.stringBelongsToLanguage(input);
+                assertEquals(expected, automaton.fileBelongsToLanguage(file, StandardCharsets.UTF_8, pool), suffix);
+                assertEquals(expected, automaton.fileBelongsToLanguage(file), suffix);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void compiledAutomatonSurvivesSaveAndLoad(@TempDir Path directory) throws IOException {
+        CompiledAutomaton original = nonDeterministicAutomaton().compile().minimize();
+        Path named = directory.resolve("named.lfad");
+        Path anonymous = directory.resolve("anonymous.lfad");
+        original.save(named);
+        original.save(anonymous, false);
+
+        CompiledAutomaton loaded = CompiledAutomaton.load(named);
+        CompiledAutomaton loadedWithoutNames = CompiledAutomaton.load(anonymous);
+        assertEquals(original.getStateCount(), loaded.getStateCount());
+        assertEquals(original.getClassCount(), loaded.getClassCount());
+        for (int state = 0; state < original.getStateCount(); state++) {
+            assertEquals(original.getStateName(state), loaded.getStateName(state));
+            assertEquals("q" + state, loadedWithoutNames.getStateName(state));
+        }
+        for (String input : List.of("", "a", "ab", "acb", "abba", "acccb", "abbab", "abx")) {
+            assertEquals(original.matches(input), loaded.matches(input), input);
+            assertEquals(original.matches(input), loadedWithoutNames.matches(input), input);
+        }
+
+        Files.write(anonymous, new byte[]{1, 2, 3, 4});
+        assertThrows(IOException.class, () -> CompiledAutomaton.load(anonymous));
+    }
+
+    @Test
+    void corruptStateNameOffsetsFailWithIOException(@TempDir Path directory) throws IOException {
+        CompiledAutomaton original = nonDeterministicAutomaton().compile().minimize();
+        Path file = directory.resolve("named.lfad");
+        original.save(file);
+        byte[] saved = Files.readAllBytes(file);
+
+        // The names come last, after one little endian offset per state and one for the end
+        int nameBytes = 0;
+        for (int state = 0; state < original.getStateCount(); state++) {
+            nameBytes += original.getStateName(state).getBytes(StandardCharsets.UTF_8).length;
+        }
+        int offsets = saved.length - nameBytes - 4 * (original.getStateCount() + 1);
+
+        for (int[] corruption : new int[][]{{1, -5}, {1, nameBytes + 1}, {original.getStateCount(), nameBytes + 100}, {0, Integer.MIN_VALUE}}) {
+            byte[] corrupt = saved.clone();
+            ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt(offsets + 4 * corruption[0], corruption[1]);
+            Files.write(file, corrupt);
+            assertThrows(IOException.class, () -> CompiledAutomaton.load(file), Arrays.toString(corruption));
+        }
+    }
+
+    @Test
+    void offHeapAutomatonMatchesLikeTheHeapTable(@TempDir Path directory) throws IOException {
+        CompiledAutomaton heap = nthFromLastAutomaton(8).compile();
+        Path file = directory.resolve("automaton.lfad");
+        heap.save(file, false);
+
+        List<DeterministicAutomaton> backends = List.of(heap, heap.toOffHeap(), OffHeapAutomaton.map(file), nthFromLastAutomaton(8).compileOffHeap());
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int length = random.nextInt(20); length > 0; length--) {
+                input.append("abc".charAt(random.nextInt(3)));
+            }
+
+            for (DeterministicAutomaton backend : backends) {
+                assertEquals(heap.matches(input), backend.matches(input), input.toString());
+                assertEquals(heap.matches(input), backend.matcher().matches(input), input.toString());
+            }
+        }
+
+        // The off-heap copy holds the table and accept set, and the class map only up to the last symbol
+        long tableBytes = 4L * heap.getStateCount() * heap.getClassCount();
+        assertEquals(tableBytes + 2L * ('b' + 1) + 8L * ((heap.getStateCount() + 63) / 64), heap.toOffHeap().getMemoryBytes());
+    }
+
+    @Test
+    void mappingRejectsTableTargetsOutOfRange(@TempDir Path directory) throws IOException {
+        CompiledAutomaton heap = nthFromLastAutomaton(3).compile();
+        Path file = directory.resolve("automaton.lfad");
+        heap.save(file, false);
+        byte[] saved = Files.readAllBytes(file);
+        AutomatonFormat.Header header = AutomatonFormat.Header.read(ByteBuffer.wrap(saved));
+
+        for (int target : new int[]{heap.getStateCount(), -2, Integer.MAX_VALUE}) {
+            byte[] corrupt = saved.clone();
+            ByteBuffer.wrap(corrupt).order(ByteOrder.LITTLE_ENDIAN).putInt((int) header.tableOffset + 4 * (header.classCount + 1), target);
+            Files.write(file, corrupt);
+            assertThrows(IOException.class, () -> OffHeapAutomaton.map(file), String.valueOf(target));
+            assertThrows(IOException.class, () -> CompiledAutomaton.load(file), String.valueOf(target));
+        }
+    }
+
+    @Test
+    void layoutSpreadsStatesAndGridFindsTheVisibleOnes() {
+        FiniteAutomaton automaton = chainAutomaton(1500);
+        AutomatonLayout layout = AutomatonLayout.of(automaton);
+
+        assertSame(layout, AutomatonLayout.of(automaton));
+        assertEquals(1501, layout.getStateCount());
+        assertEquals(1501, layout.getEdgeCount());
+        assertEquals("a", layout.edgeLabels[0]);
+        assertEquals("\u03B5,a-d", AutomatonLayout.label(new TreeSet<>(Set.of("a", "b", "c", "d", FiniteAutomaton.EPSILON))));
+
+        // No two states on top of each other
+        Set<Long> cells = new HashSet<>();
+        for (int state = 0; state < layout.getStateCount(); state++) {
+            cells.add(Math.round(layout.x[state] / 5) * 1_000_000 + Math.round(layout.y[state] / 5));
+        }
+        assertTrue(cells.size() > layout.getStateCount() * 9 / 10);
+
+        LayoutGrid grid = new LayoutGrid(layout);
+        Random random = new Random(4);
+        for (int query = 0; query < 50; query++) {
+            double minX = random.nextDouble() * layout.getWidth();
+            double minY = random.nextDouble() * layout.getHeight();
+            double maxX = minX + random.nextDouble() * 800;
+            double maxY = minY + random.nextDouble() * 800;
+
+            Set<Integer> found = new HashSet<>();
+            Set<Integer> foundEdges = new HashSet<>();
+            grid.query(minX, minY, maxX, maxY, found::add, foundEdges::add);
+            for (int state = 0; state < layout.getStateCount(); state++) {
+                boolean inside = layout.x[state] >= minX && layout.x[state] <= maxX && layout.y[state] >= minY && layout.y[state] <= maxY;
+                assertEquals(inside, found.contains(state));
+            }
+            for (int edge = 0; edge < layout.getEdgeCount(); edge++) {
+                int from = layout.edgeFrom[edge];
+                int to = layout.edgeTo[edge];
+                boolean inside = Math.max(layout.x[from], layout.x[to]) >= minX && Math.min(layout.x[from], layout.x[to]) <= maxX
+                        && Math.max(layout.y[from], layout.y[to]) >= minY && Math.min(layout.y[from], layout.y[to]) <= maxY;
+                assertEquals(inside, foundEdges.contains(edge));
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void deprecatedNestedLayoutStillPlacesEveryState() {
+        Set<String> states = Set.of("q0", "q1", "q2", "q3");
+        Map<String, Point> positions = new FiniteAutomatonVisualizer.AutomatonLayout().generateLayout(states);
+
+        assertEquals(states, positions.keySet());
+        assertEquals(states.size(), new HashSet<>(positions.values()).size());
+        assertTrue(new FiniteAutomatonVisualizer.AutomatonLayout().generateLayout(Set.of()).isEmpty());
+    }
+
+    @Test
+    void exportsDotSvgAndPngWithoutADisplay(@TempDir Path directory) throws Exception {
+        FiniteAutomaton automaton = nonDeterministicAutomaton();
+
+        automaton.export(directory.resolve("automaton.dot"));
+        String dot = Files.readString(directory.resolve("automaton.dot"));
+        assertTrue(dot.contains("\"q0\" -> \"q0\" [label=\"a\"];"), dot);
+        assertTrue(dot.contains("\"q2\" [shape=doublecircle];"), dot);
+
+        automaton.export(directory.resolve("automaton.svg"));
+        Document svg = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(directory.resolve("automaton.svg").toFile());
+        // Four states, one ring for the accepting state and the two self loops
+        assertEquals(4 + 1 + 2, svg.getElementsByTagName("circle").getLength());
+
+        // Tall enough for several strips
+        FiniteAutomaton chain = chainAutomaton(300);
+        AutomatonLayout layout = AutomatonLayout.of(chain);
+        AutomatonExporter.writePng(chain, directory.resolve("chain.png"), 0.25);
+        BufferedImage image = ImageIO.read(directory.resolve("chain.png").toFile());
+        assertEquals((int) Math.ceil(layout.getWidth() * 0.25), image.getWidth());
+        assertEquals((int) Math.ceil(layout.getHeight() * 0.25), image.getHeight());
+        assertTrue(image.getHeight() > AutomatonExporter.TILE_HEIGHT);
+
+        int x = (int) (layout.x[0] * 0.25);
+        int y = (int) (layout.y[0] * 0.25);
+        assertNotEquals(0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF);
+        assertEquals(0xFFFFFF, image.getRGB(0, 0) & 0xFFFFFF);
+
+        assertThrows(IllegalArgumentException.class, () -> automaton.export(directory.resolve("automaton.txt")));
+    }
+}
@@ -1,9 +1,18 @@
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -98,6 +107,209 @@ class GrammarTest {
         assertFalse(grammar.getProductions().get("C").contains(""));
     }
 
+    @Test
+    void cykParsesNormalizedGrammars() {
+        Grammar balanced = new Grammar("S", Map.of("S", List.of("lSr", "SS", "lr")));
+        balanced.normalizeToChomskyForm();
+        CykParser parser = balanced.cykParser();
+
+        // Every string over l and r up to length 10 against a counter
+        for (int length = 0; length <= 10; length++) {
+            for (int bits = 0; bits < 1 << length; bits++) {
+                String input = brackets(bits, length);
+                boolean valid = isBalanced(bits, length);
+
+                assertEquals(valid, parser.recognize(input), input);
+                Optional<ParseTree> tree = parser.parse(input);
+                assertEquals(valid, tree.isPresent(), input);
+                if (valid) {
+                    assertEquals(input, tree.get().getYield());
+                    assertEquals(balanced.getStartingSymbol(), tree.get().getSymbol());
+                }
+            }
+        }
+        assertFalse(parser.recognize("lxr"));
+
+        // Long enough for the diagonals to be split over the pool
+        Grammar equalCounts = new Grammar("S", Map.of("S", List.of("aSb", "ab")));
+        equalCounts.normalizeToChomskyForm();
+        String input = "a".repeat(1000) + "b".repeat(1000);
+        ParseTree tree = equalCounts.cykParser().parse(input).orElseThrow();
+        assertEquals(input, tree.getYield());
+        assertFalse(equalCounts.cykParser().recognize(input + "b"));
+
+        Grammar notNormalized = new Grammar("S", Map.of("S", List.of("aSb", "ab")));
+        assertThrows(IllegalArgumentException.class, notNormalized::cykParser);
+    }
+
+    @Test
+    void earleyRecognizesExactlyTheLanguage() {
+        EarleyParser parser = new Grammar("S", Map.of("S", List.of("lSr", "SS", "lr"))).earleyParser();
+
+        // Every string over l and r up to length 10 against a counter
+        for (int length = 0; length <= 10; length++) {
+            for (int bits = 0; bits < 1 << length; bits++) {
+                String input = brackets(bits, length);
+                boolean valid = isBalanced(bits, length);
+
+                assertEquals(valid, parser.recognize(input), input);
+                if (valid) {
+                    assertEquals(input, parser.parse(input).orElseThrow().anyTree().getYield());
+                }
+            }
+        }
+    }
+
+    @Test
+    void earleyForestSharesAmbiguousTrees() {
+        // lr four times splits into S S in Catalan(3) ways, and a^30 by S -> SS in Catalan(29) ways
+        ParseForest forest = new Grammar("S", Map.of("S", List.of("lSr", "SS", "lr"))).earleyParser().parse("lrlrlrlr").orElseThrow();
+        assertTrue(forest.isAmbiguous());
+        assertEquals(BigInteger.valueOf(5), forest.countTrees());
+
+        ParseForest shared = new Grammar("S", Map.of("S", List.of("SS", "a"))).earleyParser().parse("a".repeat(30)).orElseThrow();
+        assertEquals(new BigInteger("1002242216651368"), shared.countTrees());
+        assertTrue(shared.getNodeCount() < 1000);
+    }
+
+    @Test
+    void earleyHandlesEmptyProductions() {
+        Grammar nullable = new Grammar("S", Map.of("S", List.of("AB"), "A", List.of("aA", ""), "B", List.of("b", "")));
+        EarleyParser parser = nullable.earleyParser();
+
+        assertTrue(parser.isNullable("S"));
+        assertEquals("S(A(), B())", parser.parse("").orElseThrow().anyTree().toString());
+        assertEquals("S(A(a, A(a, A())), B(b))", parser.parse("aab").orElseThrow().anyTree().toString());
+        assertFalse(parser.recognize("ba"));
+    }
+
+    @Test
+    void earleyKeepsRightRecursionLinear() {
+        // Every set completes S from every earlier one, so without the Leo chains the chart is quadratic
+        EarleyParser parser = new Grammar("S", Map.of("S", List.of("aS", "a"))).earleyParser();
+        String shorter = "a".repeat(2000);
+        String longer = "a".repeat(4000);
+        assertTrue(parser.chartSize(longer) < 2.2 * parser.chartSize(shorter));
+        assertTrue(parser.parse(longer).orElseThrow().getNodeCount() < 2.2 * parser.parse(shorter).orElseThrow().getNodeCount());
+
+        String input = "a".repeat(100000);
+        ParseForest right = parser.parse(input).orElseThrow();
+
+        assertEquals(input, right.anyTree().getYield());
+        assertEquals(BigInteger.ONE, right.countTrees());
+    }
+
+    @Test
+    void earleyForestOfCyclicGrammarHasInfinitelyManyTrees() {
+        ParseForest cyclic = new Grammar("S", Map.of("S", List.of("S", "a"))).earleyParser().parse("a").orElseThrow();
+
+        assertEquals("S(a)", cyclic.anyTree().toString());
+        assertThrows(IllegalStateException.class, cyclic::countTrees);
+    }
+
+    @Test
+    void generatorStaysWithinBounds() {
+        Grammar doubling = new Grammar("S", Map.of("S", List.of("SS", "a")));
+        EarleyParser parser = doubling.earleyParser();
+        DerivationGenerator bounded = doubling.generator(50, DerivationGenerator.UNBOUNDED);
+        assertEquals(1, bounded.getMinLength());
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            String generated = bounded.generate(random);
+            assertTrue(generated.length() >= 1 && generated.length() <= 50, generated);
+            assertTrue(parser.recognize(generated), generated);
+        }
+
+        DerivationGenerator shallow = doubling.generator(DerivationGenerator.UNBOUNDED, 4);
+        for (int i = 0; i < 1000; i++) {
+            ParseTree tree = shallow.generateTree(random);
+            assertTrue(depth(tree) <= 4, tree.toString());
+            assertTrue(tree.getYield().length() <= 8, tree.toString());
+        }
+
+        // a^n b^n needs n levels, and none of its strings has odd length
+        Grammar counting = new Grammar("S", Map.of("S", List.of("aSb", "ab")));
+        DerivationGenerator three = counting.generator(DerivationGenerator.UNBOUNDED, 3);
+        assertEquals(2, three.getMinLength());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(Set.of("ab", "aabb", "aaabbb").contains(three.generate(random)));
+        }
+        assertEquals("ab", counting.generator(3, DerivationGenerator.UNBOUNDED).generate(random));
+        assertThrows(IllegalArgumentException.class, () -> counting.generator(1, DerivationGenerator.UNBOUNDED));
+        assertThrows(IllegalArgumentException.class, () -> counting.generator(DerivationGenerator.UNBOUNDED, 0));
+
+        Grammar lab = new Grammar("S", Map.of("S", List.of("aP", "bQ"), "P", List.of("bP", "cP", "dQ", "e"), "Q", List.of("eQ", "fQ", "a")));
+        EarleyParser labParser = lab.earleyParser();
+        for (int i = 0; i < 100; i++) {
+            String generated = lab.generateString();
+            assertTrue(labParser.recognize(generated), generated);
+        }
+    }
+
+    @Test
+    void generatorFollowsRewrittenProductions() {
+        Grammar grammar = new Grammar("S", Map.of("S", List.of("aS", "")));
+        assertTrue(grammar.generate(100, 1).anyMatch(String::isEmpty));
+
+        // Eliminating the empty production drops the empty string from the language
+        grammar.eliminateEpsilonProductions();
+        assertTrue(grammar.generate(100, 1).noneMatch(String::isEmpty));
+        for (int i = 0; i < 100; i++) {
+            assertFalse(grammar.generateString().isEmpty());
+        }
+    }
+
+    @Test
+    void bulkGenerationIsReproducibleInParallel(@TempDir Path directory) throws IOException {
+        Grammar lab = new Grammar("S", Map.of("S", List.of("aP", "bQ"), "P", List.of("bP", "cP", "dQ", "e"), "Q", List.of("eQ", "fQ", "a")));
+        List<String> sequential = lab.generate(10000, 7).collect(Collectors.toList());
+        assertEquals(10000, sequential.size());
+        assertEquals(sequential, lab.generate(10000, 7).parallel().collect(Collectors.toList()));
+        assertNotEquals(sequential, lab.generate(10000, 8).collect(Collectors.toList()));
+        assertEquals(sequential.subList(0, 300), lab.generate(10000, 7).limit(300).collect(Collectors.toList()));
+        assertEquals(0, lab.generate(0, 7).count());
+
+        EarleyParser parser = lab.earleyParser();
+        assertTrue(sequential.stream().allMatch(parser::recognize));
+
+        Path file = directory.resolve("corpus.txt");
+        lab.generate(10000, 7, file);
+        assertEquals(sequential, Files.readAllLines(file));
+        lab.generator(20, DerivationGenerator.UNBOUNDED).write(file, 1000, 3, new ForkJoinPool(3));
+        assertEquals(lab.generator(20, DerivationGenerator.UNBOUNDED).generate(1000, 3).collect(Collectors.toList()), Files.readAllLines(file));
+
+        assertThrows(IllegalArgumentException.class, () -> lab.generate(-1, 7));
+    }
+
+    // Bit i of bits chooses l for 0 and r for 1 at position i
+    private String brackets(int bits, int length) {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            input.append((bits >> i & 1) == 0 ? 'l' : 'r');
+        }
+        return input.toString();
+    }
+
+    // Whether brackets(bits, length) is a non-empty balanced string
+    private boolean isBalanced(int bits, int length) {
+        int depth = 0;
+        for (int i = 0; i < length; i++) {
+            depth += (bits >> i & 1) == 0 ? 1 : -1;
+            if (depth < 0) {
+                return false;
+            }
+        }
+        return length > 0 && depth == 0;
+    }
+
+    private int depth(ParseTree tree) {
+        int depth = 0;
+        for (ParseTree child : tree.getChildren()) {
+            depth = Math.max(depth, depth(child));
+        }
+        return tree.isTerminal() ? 0 : depth + 1;
+    }
+
     private boolean countSymbolsWithVariablesAsOneSymbol(Set<String> variables, Grammar grammar) {
         return grammar.getProductions().values().stream().allMatch(productions ->
                 productions.stream().allMatch(production -> countSymbols(variables, production) <= 2)
@@ -0,0 +1,41 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LanguageComparisonTest {
+
+    private final FiniteAutomaton star = FiniteAutomaton.fromRegex("(a|b)*");
+    private final FiniteAutomaton endsWithAbb = FiniteAutomaton.fromRegex("(a|b)*abb");
+    private final FiniteAutomaton endsWithBb = FiniteAutomaton.fromRegex("(a|b)*bb");
+
+    @Test
+    void equivalentLanguagesHold() {
+        assertTrue(star.equivalentTo(FiniteAutomaton.fromRegex("(a*b*)*")).holds());
+        assertTrue(endsWithAbb.equivalentTo(endsWithAbb.minimize()).holds());
+    }
+
+    @Test
+    void inequivalenceComesWithADistinguishingString() {
+        ComparisonResult notEquivalent = endsWithAbb.equivalentTo(endsWithBb);
+        String witness = notEquivalent.getCounterexample().orElseThrow();
+
+        assertFalse(notEquivalent.holds());
+        assertNotEquals(endsWithAbb.stringBelongsToLanguage(witness), endsWithBb.stringBelongsToLanguage(witness));
+        assertFalse(star.equivalentTo(FiniteAutomaton.fromRegex("(a|b|c)*")).holds());
+    }
+
+    @Test
+    void inclusionHoldsForSublanguages() {
+        assertTrue(endsWithAbb.includedIn(endsWithBb).holds());
+        assertTrue(endsWithAbb.includedIn(star).holds());
+    }
+
+    @Test
+    void failedInclusionGivesTheShortestCounterexample() {
+        // The shortest string ending in bb without an a before it
+        assertEquals(Optional.of("bb"), endsWithBb.includedIn(endsWithAbb).getCounterexample());
+        assertEquals(Optional.of("c"), FiniteAutomaton.fromRegex("c").includedIn(star).getCounterexample());
+    }
+}
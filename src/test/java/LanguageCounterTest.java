@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LanguageCounterTest {
+
+    private final FiniteAutomaton automaton = RegexCompiler.compile("(a|b)*abb|c+");
+    private final LanguageCounter counter = automaton.counter();
+
+    // Every accepted string over {a, b, c} up to the given length, in shortlex order
+    private List<List<String>> acceptedByLength(int maxLength) {
+        List<List<String>> accepted = new ArrayList<>();
+        List<String> level = List.of("");
+        for (int length = 0; length <= maxLength; length++) {
+            List<String> matching = new ArrayList<>();
+            List<String> longer = new ArrayList<>();
+            for (String word : level) {
+                if (automaton.stringBelongsToLanguage(word)) {
+                    matching.add(word);
+                }
+                for (char c : "abc".toCharArray()) {
+                    longer.add(word + c);
+                }
+            }
+            accepted.add(matching);
+            level = longer;
+        }
+        return accepted;
+    }
+
+    @Test
+    void countsMatchBruteForce() {
+        List<List<String>> accepted = acceptedByLength(8);
+        for (int length = 0; length <= 8; length++) {
+            assertEquals(accepted.get(length).size(), counter.countExact(length), "length " + length);
+        }
+    }
+
+    @Test
+    void enumeratesInShortlexOrder() {
+        Iterator<String> shortlex = counter.shortlex();
+        for (List<String> level : acceptedByLength(8)) {
+            for (String expected : level) {
+                assertEquals(expected, shortlex.next());
+            }
+        }
+
+        Iterator<String> finite = RegexCompiler.compile("a|bc|b").counter().shortlex();
+        assertEquals(List.of("a", "b", "bc"), List.of(finite.next(), finite.next(), finite.next()));
+        assertFalse(finite.hasNext());
+    }
+
+    @Test
+    void samplesUniformlyAmongStringsOfALength() {
+        // Length 5 has aaabb, ababb, baabb, bbabb and ccccc, each should come up about equally often
+        Map<String, Integer> seen = new HashMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 9000; i++) {
+            String sample = counter.sample(5, random).orElseThrow();
+            assertTrue(automaton.stringBelongsToLanguage(sample), sample);
+            seen.merge(sample, 1, Integer::sum);
+        }
+        assertEquals(counter.countExact(5), seen.size());
+        for (int times : seen.values()) {
+            assertTrue(times > 9000 / seen.size() / 2, seen.toString());
+        }
+
+        assertEquals(Optional.empty(), RegexCompiler.compile("ab").counter().sample(3, random));
+    }
+
+    @Test
+    void largeCountsNeedBigIntegers() {
+        LanguageCounter large = RegexCompiler.compile("[a-z]*").counter();
+
+        assertEquals(BigInteger.valueOf(26).pow(40), large.count(40));
+        assertThrows(ArithmeticException.class, () -> large.countExact(40));
+        assertEquals(40, large.sample(40, new Random(5)).orElseThrow().length());
+    }
+}
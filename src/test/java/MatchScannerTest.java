@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchScannerTest {
+
+    // Brute force: try every start from the left, take the longest non-empty match there
+    private List<String> expectedMatches(FiniteAutomaton automaton, String text) {
+        List<String> expected = new ArrayList<>();
+        for (int start = 0; start < text.length(); ) {
+            int end = -1;
+            for (int candidate = start + 1; candidate <= text.length(); candidate++) {
+                if (automaton.stringBelongsToLanguage(text.substring(start, candidate))) {
+                    end = candidate;
+                }
+            }
+            if (end < 0) {
+                start++;
+            } else {
+                expected.add(start + "-" + end);
+                start = end;
+            }
+        }
+        return expected;
+    }
+
+    private void assertScansLikeBruteForce(String pattern, long seed) {
+        FiniteAutomaton automaton = RegexCompiler.compile(pattern);
+        MatchScanner scanner = automaton.scanner();
+        Random random = new Random(seed);
+
+        for (int i = 0; i < 500; i++) {
+            String text = RandomInputs.of(random, "abcdx", 29);
+            List<String> actual = new ArrayList<>();
+            scanner.scan(text, (start, end) -> actual.add(start + "-" + end));
+            assertEquals(expectedMatches(automaton, text), actual, pattern + " in " + text);
+        }
+    }
+
+    @Test
+    void prefersTheLongestAlternative() {
+        assertScansLikeBruteForce("abcd|c", 17);
+    }
+
+    @Test
+    void restartsAfterEveryMatch() {
+        assertScansLikeBruteForce("a*b", 18);
+        assertScansLikeBruteForce("[a-c]{2,3}b{2}", 19);
+    }
+
+    @Test
+    void skipsEmptyMatches() {
+        assertScansLikeBruteForce("(ab|c)+|", 20);
+    }
+
+    @Test
+    void backsOffToTheLastAcceptingPosition() {
+        assertScansLikeBruteForce("b(ab)*|aba", 21);
+    }
+
+    @Test
+    void keepsAllStatesOfALargeDfaCached() {
+        // The minimized DFA of a thousand keywords has thousands of states, a state of the scanner
+        // only keeps the few threads that are alive, so the default cache holds them all
+        Random random = new Random(22);
+        List<String> keywords = new ArrayList<>();
+        while (keywords.size() < 1000) {
+            String keyword = RandomInputs.of(random, "abcdefghijklmnopqrstuvwxyz", 10);
+            if (keyword.length() >= 5) {
+                keywords.add(keyword);
+            }
+        }
+        MatchScanner scanner = RegexCompiler.compile(String.join("|", keywords)).scanner();
+
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String keyword = keywords.get(random.nextInt(keywords.size()));
+            expected.add(text.length() + "-" + (text.length() + keyword.length()));
+            text.append(keyword).append(' ');
+        }
+        List<String> actual = new ArrayList<>();
+        scanner.scan(text, (start, end) -> actual.add(start + "-" + end));
+
+        assertEquals(expected, actual);
+        assertEquals(0, scanner.getFlushCount());
+        assertTrue(scanner.getCachedStateCount() > 1000);
+    }
+}
@@ -0,0 +1,78 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductAutomatonTest {
+
+    private final FiniteAutomaton evenLength = FiniteAutomaton.fromRegex("((a|b)(a|b))*");
+    private final FiniteAutomaton endsWithB = FiniteAutomaton.fromRegex("(a|b)*b");
+
+    @Test
+    void binaryOperationsCombineLanguages() {
+        ProductAutomaton intersection = evenLength.intersect(endsWithB);
+        ProductAutomaton union = evenLength.union(endsWithB);
+        ProductAutomaton difference = evenLength.difference(endsWithB);
+        Random random = new Random(11);
+
+        for (int i = 0; i < 1000; i++) {
+            String input = RandomInputs.of(random, "abc", 7);
+            boolean even = evenLength.stringBelongsToLanguage(input);
+            boolean b = endsWithB.stringBelongsToLanguage(input);
+            assertEquals(even && b, intersection.matches(input), input);
+            assertEquals(even || b, union.matches(input), input);
+            assertEquals(even && !b, difference.matches(input), input);
+        }
+    }
+
+    @Test
+    void complementStaysWithinTheAlphabet() {
+        ProductAutomaton complement = endsWithB.complement();
+        Random random = new Random(12);
+
+        for (int i = 0; i < 1000; i++) {
+            String input = RandomInputs.of(random, "abc", 7);
+            boolean overAb = input.indexOf('c') < 0;
+            assertEquals(overAb && !endsWithB.stringBelongsToLanguage(input), complement.matches(input), input);
+        }
+    }
+
+    @Test
+    void productsNestAndMinimize() {
+        ProductAutomaton intersection = evenLength.intersect(endsWithB);
+        ProductAutomaton nested = ProductAutomaton.difference(FiniteAutomaton.fromRegex("[a-c]*").compile(), evenLength.union(endsWithB));
+        Random random = new Random(13);
+
+        for (int i = 0; i < 1000; i++) {
+            String input = RandomInputs.of(random, "abc", 7);
+            boolean even = evenLength.stringBelongsToLanguage(input);
+            boolean b = endsWithB.stringBelongsToLanguage(input);
+            assertEquals(!even && !b, nested.matches(input), input);
+            assertEquals(even && b, intersection.minimize().matches(input), input);
+        }
+        assertEquals(3, intersection.minimize().getStateCount());
+    }
+
+    @Test
+    void jointClassesOfLargeClassMapsDoNotOverflow() {
+        // 65536 classes on each side, far more pairs than an int can count, but only 65536 occur
+        char[] charClasses = new char[Character.MAX_VALUE + 1];
+        char[] representatives = ProductAutomaton.jointClasses(c -> c, c -> c == 0 ? 0 : Character.MAX_VALUE + 1 - c, charClasses);
+
+        assertEquals(Character.MAX_VALUE + 1, representatives.length);
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            assertEquals(c, charClasses[c]);
+        }
+
+        // With char 0 in a class of its own as well, class 0 would need a 65537th id
+        assertThrows(IllegalArgumentException.class, () -> ProductAutomaton.jointClasses(c -> c, c -> 1, new char[Character.MAX_VALUE + 1]));
+    }
+
+    @Test
+    void emptinessAndWitnesses() {
+        assertEquals(Optional.of("b"), endsWithB.intersect(FiniteAutomaton.fromRegex("a*b")).findAcceptedString());
+        assertTrue(evenLength.intersect(FiniteAutomaton.fromRegex("a(aa)*")).isEmpty());
+    }
+}
@@ -0,0 +1,16 @@
+import java.util.Random;
+
+// Random strings over a few symbols, for the tests that compare an engine against a brute force answer
+final class RandomInputs {
+
+    private RandomInputs() {
+    }
+
+    static String of(Random random, String symbols, int maxLength) {
+        StringBuilder input = new StringBuilder();
+        for (int length = random.nextInt(maxLength + 1); length > 0; length--) {
+            input.append(symbols.charAt(random.nextInt(symbols.length())));
+        }
+        return input.toString();
+    }
+}
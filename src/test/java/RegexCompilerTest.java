@@ -0,0 +1,77 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegexCompilerTest {
+
+    private static final List<String> PATTERNS = List.of(
+            "(a|b)*abb",
+            "a+b?c*",
+            "(ab|c)+|",
+            "[a-c]{2,3}b{2}",
+            "[^ab]c.",
+            "(0|1(01*0)*1)*",
+            "\\d+(\\.\\d{1,2})?"
+    );
+
+    @Test
+    void agreesWithJavaRegex() {
+        Random random = new Random(42);
+        String symbols = "abc01.9";
+
+        for (String pattern : PATTERNS) {
+            Pattern expected = Pattern.compile(pattern);
+            FiniteAutomaton nfa = RegexCompiler.compile(pattern);
+            CompiledAutomaton dfa = nfa.compile();
+
+            for (int i = 0; i < 2000; i++) {
+                StringBuilder input = new StringBuilder();
+                for (int length = random.nextInt(8); length > 0; length--) {
+                    input.append(symbols.charAt(random.nextInt(symbols.length())));
+                }
+
+                boolean matches = expected.matcher(input).matches();
+                assertEquals(matches, nfa.stringBelongsToLanguage(input.toString()), pattern + " on " + input);
+                assertEquals(matches, dfa.matches(input), pattern + " on " + input);
+            }
+        }
+    }
+
+    @Test
+    void hasEpsilonMovesUntilDeterminized() {
+        FiniteAutomaton nfa = FiniteAutomaton.fromRegex("(a|b)*abb");
+
+        assertFalse(nfa.isDeterministic());
+        assertEquals(4, nfa.minimize().getStates().size());
+    }
+
+    @Test
+    void rejectsMalformedPatterns() {
+        for (String pattern : List.of("(ab", "a)", "*a", "[ab", "a{3,1}", "a\\")) {
+            assertThrows(IllegalArgumentException.class, () -> RegexCompiler.compile(pattern), pattern);
+        }
+    }
+
+    @Test
+    void compressesAlphabetIntoSymbolClasses() {
+        StringBuilder universe = new StringBuilder();
+        for (char c = ' '; c < '\u0800'; c++) {
+            universe.append(c);
+        }
+
+        CompiledAutomaton dfa = RegexCompiler.compile("[a-z]+\\d.", universe.toString()).compile();
+
+        // Outside the alphabet, letters, digits and every other character of the universe
+        assertEquals(universe.length(), dfa.getSymbolCount());
+        assertEquals(4, dfa.getClassCount());
+        assertTrue(dfa.matches("abc7\u07FF"));
+        assertTrue(dfa.matches("z0a"));
+        assertFalse(dfa.matches("abc7\u0800"));
+        assertFalse(dfa.matches("abc\u07FF7"));
+        assertEquals(dfa.minimize().getStateCount(), dfa.toFiniteAutomaton().minimize().getStates().size());
+    }
+}
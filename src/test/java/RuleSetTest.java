@@ -0,0 +1,65 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleSetTest {
+
+    private static final List<String> PATTERNS = List.of("a+b?c*", "(a|b)*abb", "[a-c]{2,3}b{2}", "(ab|c)+|", "a*");
+
+    // Every rule of the set, with null for the removed ones, checked against matching them one by one
+    private void assertMatchesEachRule(RuleSet ruleSet, List<FiniteAutomaton> automata, long seed) {
+        Random random = new Random(seed);
+        for (int i = 0; i < 2000; i++) {
+            String input = RandomInputs.of(random, "abcd", 7);
+
+            BitSet expected = new BitSet();
+            for (int rule = 0; rule < automata.size(); rule++) {
+                if (automata.get(rule) != null && automata.get(rule).stringBelongsToLanguage(input)) {
+                    expected.set(rule);
+                }
+            }
+            assertEquals(expected, ruleSet.match(input), input);
+        }
+    }
+
+    private List<FiniteAutomaton> addAll(RuleSet ruleSet) {
+        List<FiniteAutomaton> automata = new ArrayList<>();
+        for (String pattern : PATTERNS) {
+            automata.add(RegexCompiler.compile(pattern));
+            assertEquals(automata.size() - 1, ruleSet.add(automata.get(automata.size() - 1)));
+        }
+        return automata;
+    }
+
+    @Test
+    void reportsEveryMatchingRule() {
+        RuleSet ruleSet = new RuleSet();
+        assertMatchesEachRule(ruleSet, addAll(ruleSet), 13);
+    }
+
+    @Test
+    void removedRulesStopMatchingAndIdsAreNotReused() {
+        RuleSet ruleSet = new RuleSet();
+        List<FiniteAutomaton> automata = addAll(ruleSet);
+        ruleSet.remove(1);
+        ruleSet.remove(3);
+        automata.set(1, null);
+        automata.set(3, null);
+
+        assertEquals(5, ruleSet.add(RegexCompiler.compile("c+")));
+        automata.add(RegexCompiler.compile("c+"));
+        assertMatchesEachRule(ruleSet, automata, 14);
+        assertThrows(IllegalArgumentException.class, () -> new RuleSet().remove(0));
+    }
+
+    @Test
+    void tinyCacheGivesTheSameMatches() {
+        RuleSet ruleSet = new RuleSet(256L);
+        assertMatchesEachRule(ruleSet, addAll(ruleSet), 15);
+    }
+}